@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * {@code BenchmarkCatalog} points the {@link ProductManager} of a benchmark run
+ * at a generated catalog through the {@code labs.pm.*} system properties.
+ * <br>
+ * The manager is a singleton loaded once per JVM, so each catalog needs a JVM
+ * of its own, which JMH provides by forking per parameter combination.
+ * The journal is disabled so reviews measure the catalog rather than the disk,
+ * and the report store so reports measure rendering rather than linking.
+ * @author AymanElMikh
+ **/
+final class BenchmarkCatalog {
+
+    private static String opened;
+
+    private BenchmarkCatalog() {
+    }
+
+    /**
+     * Generates the catalog of {@code products} products if needed and loads it.
+     *
+     * @param layout the {@code data.layout} setting, {@code files} or {@code segments}
+     * @throws IllegalStateException if this JVM already loaded a different catalog
+     */
+    static synchronized ProductManager open(int products, String layout) throws IOException {
+        String catalog = products + " " + layout;
+        if (opened != null && !opened.equals(catalog)) {
+            throw new IllegalStateException("Loaded " + opened + " already, run each catalog in its own fork");
+        }
+        opened = catalog;
+        Path folder = Path.of(System.getProperty("labs.pm.bench.folder", System.getProperty("java.io.tmpdir")))
+                .resolve("catalog" + products);
+        Path data = CatalogGenerator.generate(folder.resolve("data"), products);
+        Path reports = Files.createDirectories(folder.resolve("reports"));
+        Path temp = Files.createDirectories(folder.resolve("temp"));
+        System.setProperty("labs.pm.data.folder", data.toString());
+        System.setProperty("labs.pm.reports.folder", reports.toString());
+        System.setProperty("labs.pm.temp.folder", temp.toString());
+        System.setProperty("labs.pm.data.layout", layout);
+        System.setProperty("labs.pm.journal.enabled", "false");
+        System.setProperty("labs.pm.reports.store.enabled", "false");
+        return ProductManager.getInstance();
+    }
+}
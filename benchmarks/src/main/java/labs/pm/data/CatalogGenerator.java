@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * {@code CatalogGenerator} writes a synthetic catalog as {@code product{N}.csv}
+ * and {@code review{N}.csv} files in the format read by {@link ProductManager}.
+ * <br>
+ * Products alternate at random between drinks and foods, with prices up to 100,
+ * best before dates around today and a few reviews each. The same size and seed
+ * always produce the same catalog.
+ * <br>
+ * A {@value #MARKER} file records what a folder holds, so a catalog of the
+ * requested size is written only once and reused by later runs.
+ * @author AymanElMikh
+ **/
+public final class CatalogGenerator {
+
+    static final String MARKER = "catalog.generated";
+    private static final long SEED = 42;
+    private static final int MAX_REVIEWS = 8;
+    private static final List<String> COMMENTS = List.of(
+            "Nice", "Excellent", "Not bad", "Rather weak", "Good value for money",
+            "Fine tea", "Just add some lemon", "Perfect, with a biscuit", "Too expensive", "Will buy again");
+
+    private CatalogGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CatalogGenerator <folder> <products>");
+            System.exit(1);
+        }
+        Path folder = Path.of(args[0]);
+        int products = Integer.parseInt(args[1]);
+        long start = System.nanoTime();
+        generate(folder, products);
+        System.out.println("Wrote " + products + " products to " + folder
+                + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Writes a catalog of {@code products} products with ids {@code 0} to
+     * {@code products - 1}, unless {@code folder} already holds that catalog.
+     *
+     * @return {@code folder}
+     */
+    static Path generate(Path folder, int products) throws IOException {
+        String description = products + " products, seed " + SEED;
+        Path marker = folder.resolve(MARKER);
+        if (Files.exists(marker) && Files.readString(marker).equals(description)) {
+            return folder;
+        }
+        Files.createDirectories(folder);
+        Files.deleteIfExists(marker);
+        LocalDate today = LocalDate.now();
+        try {
+            IntStream.range(0, products).parallel().forEach(id -> write(folder, id, today));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.writeString(marker, description);
+        return folder;
+    }
+
+    /*
+     * Every product draws from its own generator, so the files do not depend
+     * on the order in which the parallel stream writes them.
+     */
+    private static void write(Path folder, int id, LocalDate today) {
+        SplittableRandom random = new SplittableRandom(SEED * 31 + id);
+        try {
+            Files.writeString(folder.resolve("product" + id + ".csv"), productRecord(random, id, today));
+            try (BufferedWriter out = Files.newBufferedWriter(folder.resolve("review" + id + ".csv"), StandardCharsets.UTF_8)) {
+                int reviews = random.nextInt(MAX_REVIEWS + 1);
+                for (int i = 0; i < reviews; i++) {
+                    out.write(reviewRecord(random));
+                    out.newLine();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a product record {@code type,id,name,price,rating,bestBefore}.
+     */
+    static String productRecord(SplittableRandom random, int id, LocalDate today) {
+        boolean drink = random.nextBoolean();
+        int cents = 10 + random.nextInt(10_000);
+        LocalDate bestBefore = today.plusDays(random.nextInt(-30, 365));
+        return (drink ? "D," : "F,") + id + ',' + (drink ? "Drink " : "Food ") + id + ','
+                + cents / 100 + '.' + (cents % 100 < 10 ? "0" : "") + cents % 100 + ",0," + bestBefore;
+    }
+
+    /**
+     * Returns a review record {@code rating,comments}.
+     */
+    static String reviewRecord(SplittableRandom random) {
+        return (1 + random.nextInt(5)) + "," + COMMENTS.get(random.nextInt(COMMENTS.size()));
+    }
+}
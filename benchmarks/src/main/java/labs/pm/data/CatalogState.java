@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@code CatalogState} is the catalog shared by the threads of a benchmark,
+ * one of the generated catalogs of {@code products} products.
+ * @author AymanElMikh
+ **/
+@State(Scope.Benchmark)
+public class CatalogState {
+
+    @Param({"1000", "100000", "1000000"})
+    public int products;
+
+    ProductManager pm;
+
+    @Setup
+    public void setUp() throws IOException {
+        pm = BenchmarkCatalog.open(products, "files");
+    }
+
+    int randomId() {
+        return ThreadLocalRandom.current().nextInt(products);
+    }
+}
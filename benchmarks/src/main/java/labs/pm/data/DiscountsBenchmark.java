@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the discount totals per rating, both when they are unchanged since the
+ * last read and right after a review changed them.
+ * @author AymanElMikh
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiscountsBenchmark {
+
+    @Benchmark
+    public Map<String, String> getDiscounts(CatalogState catalog) {
+        return catalog.pm.getDiscounts("en-GB");
+    }
+
+    @Benchmark
+    public Map<String, String> getDiscountsAfterReview(CatalogState catalog) {
+        catalog.pm.reviewProduct(catalog.randomId(), Rating.TWO_STAR, "Benchmark review");
+        return catalog.pm.getDiscounts("en-GB");
+    }
+}
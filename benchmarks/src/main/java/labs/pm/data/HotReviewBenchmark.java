@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reviews from many threads that mostly hit a handful of hot products, with and
+ * without {@code reviews.combining}.
+ * @author AymanElMikh
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class HotReviewBenchmark {
+
+    private static final int PRODUCTS = 1000;
+    private static final int HOT_PRODUCTS = 10;
+
+    /**
+     * The catalog, opened once per fork with the combining setting of the run.
+     */
+    @State(Scope.Benchmark)
+    public static class HotCatalog {
+
+        @Param({"false", "true"})
+        public boolean combining;
+
+        ProductManager pm;
+
+        @Setup
+        public void setUp() throws IOException {
+            System.setProperty("labs.pm.reviews.combining", String.valueOf(combining));
+            pm = BenchmarkCatalog.open(PRODUCTS, "files");
+        }
+    }
+
+    @Benchmark
+    public Product reviewProduct(HotCatalog catalog) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int id = (random.nextInt(10) < 9) ? random.nextInt(HOT_PRODUCTS) : random.nextInt(PRODUCTS);
+        return catalog.pm.reviewProduct(id, Rating.FOUR_STAR, "Benchmark review");
+    }
+}
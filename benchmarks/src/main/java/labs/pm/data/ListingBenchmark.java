@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Lists the catalog with a price filter and a rating order: the whole listing,
+ * its first page, and the first page of an indexed {@link ProductQuery}.
+ * @author AymanElMikh
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+
+    private static final BigDecimal MAX_PRICE = BigDecimal.valueOf(50);
+    private static final Predicate<Product> CHEAP = product -> product.getPrice().compareTo(MAX_PRICE) < 0;
+    private static final Comparator<Product> BY_RATING = (p1, p2) -> p2.getRating().ordinal() - p1.getRating().ordinal();
+    private static final ProductQuery CHEAP_FOOD = ProductQuery.all().type(Food.class).price(null, MAX_PRICE);
+    private static final int PAGE = 50;
+
+    @Benchmark
+    public StringBuilder printProducts(CatalogState catalog) {
+        return catalog.pm.printProducts(CHEAP, BY_RATING, "en-GB");
+    }
+
+    @Benchmark
+    public int printFirstPage(CatalogState catalog) throws IOException {
+        return catalog.pm.printProducts(CHEAP, BY_RATING, "en-GB", 0, PAGE, Writer.nullWriter());
+    }
+
+    @Benchmark
+    public List<Product> findProducts(CatalogState catalog) {
+        return catalog.pm.findProducts(CHEAP_FOOD, BY_RATING, 0, PAGE);
+    }
+}
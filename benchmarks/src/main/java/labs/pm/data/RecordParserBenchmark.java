@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses product and review records such as the generated catalog holds,
+ * cycling through a fixed set of records.
+ * @author AymanElMikh
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordParserBenchmark {
+
+    private static final int RECORDS = 1024;
+
+    private final String[] products = new String[RECORDS];
+    private final String[] reviews = new String[RECORDS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < RECORDS; i++) {
+            products[i] = CatalogGenerator.productRecord(random, i, today);
+            reviews[i] = CatalogGenerator.reviewRecord(random);
+        }
+    }
+
+    @Benchmark
+    public Product parseProduct() throws ParseException {
+        String text = products[next++ & (RECORDS - 1)];
+        return RecordParser.parseProduct(text, 0, text.length());
+    }
+
+    @Benchmark
+    public Review parseReview() throws ParseException {
+        String text = reviews[next++ & (RECORDS - 1)];
+        return RecordParser.parseReview(text, 0, text.length());
+    }
+}
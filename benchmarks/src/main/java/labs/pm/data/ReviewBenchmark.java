@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reviews a random product, which finds it by id, appends the review and
+ * republishes the product with its new rating, one call per review or a
+ * batch of random reviews at a time. Both report the time per review.
+ * @author AymanElMikh
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReviewBenchmark {
+
+    @Benchmark
+    public Product reviewProduct(CatalogState catalog) {
+        return catalog.pm.reviewProduct(catalog.randomId(), Rating.FOUR_STAR, "Benchmark review");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Batch.SIZE)
+    public List<Product> reviewProducts(CatalogState catalog, Batch batch) {
+        return catalog.pm.reviewProducts(batch.reviews);
+    }
+
+    /**
+     * A batch of reviews of random products, drawn again for each iteration.
+     */
+    @State(Scope.Thread)
+    public static class Batch {
+
+        static final int SIZE = 10_000;
+
+        List<ProductReview> reviews;
+
+        @Setup(Level.Iteration)
+        public void setUp(CatalogState catalog) {
+            reviews = new ArrayList<>(SIZE);
+            for (int i = 0; i < SIZE; i++) {
+                reviews.add(new ProductReview(catalog.randomId(), Rating.FOUR_STAR, "Benchmark review"));
+            }
+        }
+    }
+}
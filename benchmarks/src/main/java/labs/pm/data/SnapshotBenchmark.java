@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dumps the catalog to a snapshot in the temp folder and restores it. Each
+ * benchmark does the other half outside the measurement, so the catalog is
+ * whole again before every invocation.
+ * @author AymanElMikh
+ **/
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Dump extends CatalogState {
+
+        @TearDown(Level.Invocation)
+        public void restore() {
+            pm.restoreData();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Restore extends CatalogState {
+
+        @Setup(Level.Invocation)
+        public void dump() {
+            pm.dumpData();
+        }
+    }
+
+    @Benchmark
+    public void dumpData(Dump catalog) {
+        catalog.pm.dumpData();
+    }
+
+    @Benchmark
+    public void restoreData(Restore catalog) {
+        catalog.pm.restoreData();
+    }
+}
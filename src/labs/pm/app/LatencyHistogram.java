@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.app;
+
+import java.util.Arrays;
+
+/**
+ * {@code LatencyHistogram} counts latencies in nanoseconds in log-linear buckets.
+ * <br>
+ * Each power of two is split into {@value #SUB_BUCKETS} buckets, so a percentile
+ * is within about 3% of the recorded value whatever its magnitude, in a fixed
+ * amount of memory.
+ * <br>
+ * A histogram has a single writer, the histograms of several writers are
+ * combined with {@link #add(LatencyHistogram)} once they are done.
+ * @author AymanElMikh
+ **/
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long max;
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[index(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    void add(LatencyHistogram other) {
+        Arrays.setAll(counts, i -> counts[i] + other.counts[i]);
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the latency under which a {@code quantile} of the recorded latencies fall.
+     *
+     * @param quantile between 0 and 1, such as 0.99
+     * @return the upper bound of the bucket holding that latency, or 0 when nothing was recorded
+     */
+    long getValueAt(double quantile) {
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return 0;
+    }
+
+    /*
+     * Values below SUB_BUCKETS have a bucket each. Above that, the bits under the
+     * top SUB_BUCKET_BITS + 1 bits of a value are dropped.
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - SUB_BUCKET_BITS - Long.numberOfLeadingZeros(value);
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.app;
+
+import labs.pm.data.ProductManager;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code LoadProfile} is the configuration of a {@link Shop} load test, parsed
+ * from {@code name=value} arguments:
+ * <ul>
+ *     <li>{@code clients} the number of clients, each with one request in flight, default 5</li>
+ *     <li>{@code executor} {@code platform} for a fixed pool of {@code threads}
+ *     threads, default 3, or {@code virtual} for a virtual thread per request</li>
+ *     <li>{@code duration} and {@code warmup} in seconds, default 10 and 0,
+ *     requests issued during the warmup are not measured</li>
+ *     <li>{@code mix} the weighted operations, default {@code discounts,review,report}</li>
+ *     <li>{@code products} the ids requested are {@code 0} to {@code products - 1}, default 10</li>
+ *     <li>{@code distribution} of the ids, {@code uniform} or {@code zipfian},
+ *     with a {@code skew} between 0 and 1, default 0.99</li>
+ *     <li>{@code locales} the weighted language tags, default every supported locale</li>
+ *     <li>{@code seed} of the random choices</li>
+ * </ul>
+ * Without arguments the test is the five clients on three threads of the original shop.
+ * @author AymanElMikh
+ **/
+record LoadProfile(int clients, boolean virtualThreads, int threads, Duration duration, Duration warmup,
+                   WeightedChoice<Operation> mix, ProductIds productIds, WeightedChoice<String> locales,
+                   long seed) {
+
+    private static final Set<String> KEYS = Set.of("clients", "executor", "threads", "duration", "warmup",
+            "mix", "products", "distribution", "skew", "locales", "seed");
+
+    /**
+     * @throws IllegalArgumentException if an argument is unknown or invalid
+     */
+    static LoadProfile parse(String... args) {
+        Map<String, String> settings = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String key = (equals < 0) ? arg : arg.substring(0, equals);
+            if (equals < 0 || !KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown argument " + arg + ", expected one of " + KEYS);
+            }
+            settings.put(key, arg.substring(equals + 1));
+        }
+        int clients = Integer.parseInt(settings.getOrDefault("clients", "5"));
+        String executor = settings.getOrDefault("executor", "platform");
+        if (!executor.equals("platform") && !executor.equals("virtual")) {
+            throw new IllegalArgumentException("Unknown executor " + executor);
+        }
+        int threads = Integer.parseInt(settings.getOrDefault("threads", "3"));
+        if (clients < 1 || threads < 1) {
+            throw new IllegalArgumentException("Invalid clients " + clients + " threads " + threads);
+        }
+        int products = Integer.parseInt(settings.getOrDefault("products", "10"));
+        String distribution = settings.getOrDefault("distribution", "uniform");
+        ProductIds productIds = switch (distribution) {
+            case "uniform" -> new ProductIds.Uniform(products);
+            case "zipfian" -> new ProductIds.Zipfian(products, Double.parseDouble(settings.getOrDefault("skew", "0.99")));
+            default -> throw new IllegalArgumentException("Unknown distribution " + distribution);
+        };
+        Set<String> supported = ProductManager.getSupportedLocales();
+        WeightedChoice<String> locales = WeightedChoice.parse(
+                settings.getOrDefault("locales", String.join(",", supported)), tag -> {
+                    if (!supported.contains(tag)) {
+                        throw new IllegalArgumentException("Unsupported locale " + tag);
+                    }
+                    return tag;
+                });
+        return new LoadProfile(clients, executor.equals("virtual"), threads,
+                Duration.ofSeconds(Long.parseLong(settings.getOrDefault("duration", "10"))),
+                Duration.ofSeconds(Long.parseLong(settings.getOrDefault("warmup", "0"))),
+                WeightedChoice.parse(settings.getOrDefault("mix", "discounts,review,report"), Operation::of),
+                productIds, locales,
+                Long.parseLong(settings.getOrDefault("seed", String.valueOf(System.nanoTime()))));
+    }
+
+    @Override
+    public String toString() {
+        return clients + " clients on " + (virtualThreads ? "virtual threads" : threads + " platform threads")
+                + ", " + duration.toSeconds() + "s after " + warmup.toSeconds() + "s warmup, mix " + mix
+                + ", ids " + productIds + ", locales " + locales + ", seed " + seed;
+    }
+}
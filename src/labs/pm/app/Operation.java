@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.app;
+
+import labs.pm.data.Product;
+import labs.pm.data.ProductManager;
+import labs.pm.data.Rating;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@code Operation} is one kind of client request issued by the {@link Shop} load test.
+ * @author AymanElMikh
+ **/
+enum Operation {
+
+    DISCOUNTS {
+        @Override
+        boolean run(ProductManager pm, int productId, String languageTag, String client) {
+            return pm.getDiscounts(languageTag) != null;
+        }
+    },
+    REVIEW {
+        @Override
+        boolean run(ProductManager pm, int productId, String languageTag, String client) {
+            return pm.reviewProduct(productId, Rating.FIVE_STAR, "Yet another review") != null;
+        }
+    },
+    REPORT {
+        @Override
+        boolean run(ProductManager pm, int productId, String languageTag, String client) {
+            try {
+                return pm.printProductReportAsync(productId, languageTag, client).join() != null;
+            } catch (CompletionException e) {
+                return false;
+            }
+        }
+    },
+    LISTING {
+        @Override
+        boolean run(ProductManager pm, int productId, String languageTag, String client) throws IOException {
+            pm.printProducts(product -> true, BY_RATING, languageTag, 0, PAGE, Writer.nullWriter());
+            return true;
+        }
+    };
+
+    private static final Comparator<Product> BY_RATING =
+            (p1, p2) -> p2.getRating().ordinal() - p1.getRating().ordinal();
+    private static final int PAGE = 20;
+
+    /**
+     * Issues the request.
+     *
+     * @return {@code false} if the request failed, such as a review of an unknown product
+     */
+    abstract boolean run(ProductManager pm, int productId, String languageTag, String client) throws IOException;
+
+    static Operation of(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.app;
+
+import java.util.SplittableRandom;
+
+/**
+ * {@code ProductIds} draws the product ids requested by the clients of a load test.
+ * @author AymanElMikh
+ **/
+sealed interface ProductIds permits ProductIds.Uniform, ProductIds.Zipfian {
+
+    int next(SplittableRandom random);
+
+    /**
+     * Every id from {@code 0} to {@code products - 1} is equally likely.
+     */
+    record Uniform(int products) implements ProductIds {
+
+        @Override
+        public int next(SplittableRandom random) {
+            return random.nextInt(products);
+        }
+
+        @Override
+        public String toString() {
+            return "uniform over " + products;
+        }
+    }
+
+    /**
+     * Id {@code k} is drawn with a probability proportional to {@code 1 / (k + 1)^skew},
+     * so the lowest ids are the hot keys.
+     * <br>
+     * Draws take constant time with the method of Gray et al., "Quickly Generating
+     * Billion-Record Synthetic Databases", once the zeta constant of the id range
+     * has been summed.
+     */
+    final class Zipfian implements ProductIds {
+
+        private final int products;
+        private final double skew;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+        private final double secondThreshold;
+
+        /**
+         * @param skew between 0 and 1 excluded, the larger the hotter the hot keys
+         */
+        Zipfian(int products, double skew) {
+            if (products < 1 || !(skew > 0 && skew < 1)) {
+                throw new IllegalArgumentException("Invalid Zipfian distribution over " + products + " skew " + skew);
+            }
+            this.products = products;
+            this.skew = skew;
+            double zeta2 = 1 + Math.pow(0.5, skew);
+            double zeta = 0;
+            for (int i = 1; i <= products; i++) {
+                zeta += 1 / Math.pow(i, skew);
+            }
+            this.zetaN = zeta;
+            this.alpha = 1 / (1 - skew);
+            this.eta = (1 - Math.pow(2.0 / products, 1 - skew)) / (1 - zeta2 / zetaN);
+            this.secondThreshold = zeta2;
+        }
+
+        @Override
+        public int next(SplittableRandom random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < secondThreshold) {
+                return Math.min(1, products - 1);
+            }
+            return (int) Math.min(products - 1, products * Math.pow(eta * u - eta + 1, alpha));
+        }
+
+        @Override
+        public String toString() {
+            return "zipfian over " + products + " skew " + skew;
+        }
+    }
+}
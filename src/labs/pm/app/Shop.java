@@ -17,94 +17,175 @@
  *
  */
 
+
 package labs.pm.app;
 
 import labs.pm.data.*;
 
-import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.LocalTime;
-import java.util.Comparator;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.Map;
+import java.util.SplittableRandom;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 
 /**
  * {@code Shop} class represents an application that manages Products
+ * <br>
+ * It runs a load test of the {@link ProductManager}: a number of clients each
+ * issue one request at a time, drawn from a weighted mix of operations, product
+ * ids and locales, for a fixed duration. The throughput and latency percentiles
+ * of each operation are printed at the end. The test is configured by
+ * {@code name=value} arguments, described in {@link LoadProfile}.
+ * <br>
+ * Latencies are measured from the moment a request is handed to the executor,
+ * so they include the time spent waiting for a thread of a pool smaller than
+ * the number of clients.
  * @version 1.0
  * @author AymanElMikh
  */
 public class Shop {
 
-    public static void main(String[] args) {
-
-        ProductManager pm = ProductManager.getInstance();
-        AtomicInteger clientCount = new AtomicInteger(0);
-
-        Callable<String> client = () -> {
-            String clientId = "Client " + clientCount.incrementAndGet();
-            String threadName = Thread.currentThread().getName();
-            int productId = ThreadLocalRandom.current().nextInt(10);
-
-            Set<String> locales = ProductManager.getSupportedLocales();
-
-            String languageTag = locales.isEmpty() ? "en-US" :
-                    locales.stream()
-                            .skip(ThreadLocalRandom.current().nextInt(locales.size()))
-                            .findFirst()
-                            .orElse("en-US");
+    private static final Logger logger = Logger.getLogger(Shop.class.getName());
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
 
-            StringBuilder log = new StringBuilder();
-            log.append(clientId).append(" ").append(threadName).append("\n-\tstart of log\t-\n");
+    public static void main(String[] args) {
 
-            log.append(
-                    pm.getDiscounts(languageTag)
-                            .entrySet()
-                            .stream()
-                            .map(entry -> entry.getKey() + "\t" + entry.getValue())
-                            .collect(Collectors.joining("\n"))
-            );
+        LoadProfile profile;
+        try {
+            profile = LoadProfile.parse(args);
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Invalid load profile " + e.getMessage());
+            return;
+        }
 
-            Product product = pm.reviewProduct(productId, Rating.FIVE_STAR, "Yet another review");
+        ProductManager pm = ProductManager.getInstance();
+        System.out.println("Load test: " + profile);
+
+        ExecutorService executorService = profile.virtualThreads() ?
+                Executors.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(profile.threads());
+        long measuredFrom = System.nanoTime() + profile.warmup().toNanos();
+        long end = measuredFrom + profile.duration().toNanos();
+        CountDownLatch done = new CountDownLatch(profile.clients());
+        SplittableRandom seeds = new SplittableRandom(profile.seed());
+
+        List<Client> clients = new ArrayList<>();
+        for (int i = 1; i <= profile.clients(); i++) {
+            clients.add(new Client("Client " + i, pm, profile, seeds.split(), executorService, measuredFrom, end, done));
+        }
 
-            log.append("\nProduct ").append(productId).append(" Reviewed\n");
+        try {
+            clients.forEach(Client::submit);
+            done.await();
+            print(clients, profile);
+            System.out.println();
+            System.out.print(pm.printMetrics());
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Error waiting for clients", e);
+        } finally {
+            executorService.shutdown();
+        }
+    }
 
-            pm.printProductReport(productId, languageTag, clientId);
-            log.append(clientId).append(" generated report for ").append(productId).append(" product");
-            log.append("\n-\tend of log\t-\n");
+    private static void print(List<Client> clients, LoadProfile profile) {
+        double seconds = profile.duration().toNanos() / 1e9;
+        System.out.printf(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s %10s %8s%n",
+                "operation", "requests", "ops/s", "p50 us", "p99 us", "p999 us", "max us", "failed");
+        LatencyHistogram all = new LatencyHistogram();
+        long allFailures = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latencies = new LatencyHistogram();
+            long failures = 0;
+            for (Client client : clients) {
+                latencies.add(client.latencies.get(operation));
+                failures += client.failures.get(operation)[0];
+            }
+            if (latencies.getCount() > 0) {
+                print(operation.toString(), latencies, failures, seconds);
+                all.add(latencies);
+                allFailures += failures;
+            }
+        }
+        print("total", all, allFailures, seconds);
+    }
 
-            return log.toString();
-        };
+    private static void print(String name, LatencyHistogram latencies, long failures, double seconds) {
+        System.out.printf(Locale.ROOT, "%-10s %10d %10.0f", name, latencies.getCount(), latencies.getCount() / seconds);
+        for (double percentile : PERCENTILES) {
+            System.out.printf(Locale.ROOT, " %10.1f", latencies.getValueAt(percentile) / 1e3);
+        }
+        System.out.printf(Locale.ROOT, " %10.1f %8d%n", latencies.getMax() / 1e3, failures);
+    }
 
-        List<Callable<String>> clients = Stream.generate(() -> client)
-                .limit(5)
-                .collect(Collectors.toList());
+    /*
+     * A client resubmits itself after each request until the end of the test,
+     * so its requests run one at a time but not always on the same thread.
+     * Its histograms are only touched by its current request.
+     */
+    private static final class Client implements Runnable {
+
+        private final String id;
+        private final ProductManager pm;
+        private final LoadProfile profile;
+        private final SplittableRandom random;
+        private final Executor executor;
+        private final long measuredFrom;
+        private final long end;
+        private final CountDownLatch done;
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, long[]> failures = new EnumMap<>(Operation.class);
+        private long submitted;
+
+        Client(String id, ProductManager pm, LoadProfile profile, SplittableRandom random,
+               Executor executor, long measuredFrom, long end, CountDownLatch done) {
+            this.id = id;
+            this.pm = pm;
+            this.profile = profile;
+            this.random = random;
+            this.executor = executor;
+            this.measuredFrom = measuredFrom;
+            this.end = end;
+            this.done = done;
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                failures.put(operation, new long[1]);
+            }
+        }
 
-        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        void submit() {
+            submitted = System.nanoTime();
+            executor.execute(this);
+        }
 
-        try {
-            List<Future<String>> results = executorService.invokeAll(clients);
-            results.forEach(result -> {
-                try {
-                    System.out.println(result.get());
-                } catch (InterruptedException | ExecutionException e) {
-                    Logger.getLogger(Shop.class.getName())
-                            .log(Level.SEVERE, "Error retrieving client log", e);
+        @Override
+        public void run() {
+            if (submitted >= end) {
+                done.countDown();
+                return;
+            }
+            Operation operation = profile.mix().next(random);
+            int productId = profile.productIds().next(random);
+            String languageTag = profile.locales().next(random);
+            boolean succeeded;
+            try {
+                succeeded = operation.run(pm, productId, languageTag, id);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.FINE, "Error running " + operation + " for " + id, e);
+                succeeded = false;
+            }
+            long finished = System.nanoTime();
+            if (submitted >= measuredFrom) {
+                latencies.get(operation).record(finished - submitted);
+                if (!succeeded) {
+                    failures.get(operation)[0]++;
                 }
-            });
-        } catch (InterruptedException e) {
-            Logger.getLogger(Shop.class.getName()).log(Level.SEVERE, "Error invoking clients", e);
-        } finally {
-            executorService.shutdown();
+            }
+            submit();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+
+/**
+ * {@code WeightedChoice} picks items at random in proportion to their weights.
+ * <br>
+ * A mix is written as {@code item:weight} pairs separated by commas, such as
+ * {@code review:1,discounts:4}. An item without a weight has weight 1.
+ * @author AymanElMikh
+ **/
+final class WeightedChoice<T> {
+
+    private final List<T> items;
+    private final int[] cumulative;
+
+    private WeightedChoice(List<T> items, int[] cumulative) {
+        this.items = items;
+        this.cumulative = cumulative;
+    }
+
+    /**
+     * Parses a mix such as {@code en-GB:3,ru-RU}.
+     *
+     * @param item converts the name of an item, and throws {@code IllegalArgumentException} for an unknown one
+     * @throws IllegalArgumentException if the mix is empty or a weight is not a positive number
+     */
+    static <T> WeightedChoice<T> parse(String mix, Function<String, T> item) {
+        List<T> items = new ArrayList<>();
+        List<Integer> weights = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            int weight = (colon < 0) ? 1 : Integer.parseInt(entry.substring(colon + 1).trim());
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid weight in " + entry);
+            }
+            items.add(item.apply((colon < 0 ? entry : entry.substring(0, colon)).trim()));
+            weights.add(weight);
+        }
+        if (items.isEmpty()) {
+            throw new IllegalArgumentException("Empty mix " + mix);
+        }
+        int[] cumulative = new int[weights.size()];
+        int total = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] = total += weights.get(i);
+        }
+        return new WeightedChoice<>(List.copyOf(items), cumulative);
+    }
+
+    T next(SplittableRandom random) {
+        int pick = random.nextInt(cumulative[cumulative.length - 1]);
+        int i = 0;
+        while (cumulative[i] <= pick) {
+            i++;
+        }
+        return items.get(i);
+    }
+
+    List<T> getItems() {
+        return items;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder txt = new StringBuilder();
+        for (int i = 0; i < cumulative.length; i++) {
+            txt.append(i == 0 ? "" : ",").append(items.get(i)).append(':')
+                    .append(cumulative[i] - (i == 0 ? 0 : cumulative[i - 1]));
+        }
+        return txt.toString();
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code CatalogSegments} stores the whole catalog in two segment files instead
+ * of two files per product.
+ * <p>
+ * The products segment is a header ({@code magic, format version, product count,
+ * reviews segment size, reviews segment checksum}), an index of fixed-size entries
+ * sorted by product id, the product records and a CRC32 trailer. Each index entry
+ * holds {@code id, product record offset, review offset, review bytes} and the
+ * number of reviews per rating, so rating summaries are known from the index alone.
+ * Product records are addressed with {@code int} offsets, which limits the products
+ * segment, not the reviews segment, to 2 GB.
+ * </p>
+ * <p>
+ * The reviews segment is a header ({@code magic, format version}), the reviews of
+ * every product one after the other, in index order, and a CRC32 trailer. Products
+ * and reviews use the {@link SnapshotFile} encodings.
+ * </p>
+ * <p>
+ * Each write is a new generation of both segments, numbered by the caller after
+ * the first journal segment it does not cover. Both are written to {@code .part} files, forced to disk and
+ * renamed, reviews first, so the rename of the products segment commits the
+ * generation. The products header names the size and checksum of the reviews
+ * segment it was written with, so a mismatched pair is rejected on load, and the
+ * previous generation is kept to be loaded instead.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class CatalogSegments {
+
+    private static final int PRODUCTS_MAGIC = 0x504D5053;
+    private static final int REVIEWS_MAGIC = 0x504D5253;
+    private static final short FORMAT_VERSION = 1;
+    private static final int RATINGS = Rating.values().length;
+    private static final int PRODUCTS_HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int REVIEWS_HEADER_SIZE = Integer.BYTES + Short.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + RATINGS * Integer.BYTES;
+    private static final Logger logger = Logger.getLogger(CatalogSegments.class.getName());
+
+    @FunctionalInterface
+    private interface PairReader<T> {
+        T read(Path productsFile, Path reviewsFile) throws IOException;
+    }
+
+    private final Path folder;
+    private final NumberedFiles productsFiles;
+    private final NumberedFiles reviewsFiles;
+    private Path productsFile;
+
+    CatalogSegments(Path folder, NumberedFiles productsFiles, NumberedFiles reviewsFiles) {
+        this.folder = folder;
+        this.productsFiles = productsFiles;
+        this.reviewsFiles = reviewsFiles;
+    }
+
+    /**
+     * Returns the number of the newest generation whose products segment was
+     * committed, or {@code -1} if there is none.
+     */
+    long newestGeneration() throws IOException {
+        List<Long> generations = generations();
+        return generations.isEmpty() ? -1 : generations.get(generations.size() - 1);
+    }
+
+    /**
+     * Returns the number of the oldest generation left in the folder, or {@code -1} if there is none.
+     */
+    long oldestGeneration() throws IOException {
+        List<Long> generations = generations();
+        return generations.isEmpty() ? -1 : generations.get(0);
+    }
+
+    /**
+     * Returns the products segment last read or written.
+     */
+    Path getProductsFile() {
+        return productsFile;
+    }
+
+    /**
+     * Returns the number of the generation last read or written.
+     */
+    long getGeneration() {
+        return productsFiles.numberOf(productsFile);
+    }
+
+    /**
+     * Replaces the segments with {@code products} as generation {@code generation},
+     * reporting where the reviews of each product are stored in the new reviews segment.
+     * <br>
+     * The review collections are iterated once each, in turn, so they may page
+     * their reviews in from disk without holding the whole catalog in memory.
+     * <br>
+     * Every other generation is deleted once the new one is committed, except the
+     * one last read or written, which is kept to fall back on.
+     *
+     * @param written receives each product with the location of its reviews once both segments are complete
+     */
+    void write(long generation, Map<Product, ? extends Collection<Review>> products,
+               BiConsumer<Product, ReviewLocation> written) throws IOException {
+        long previous = (productsFile != null) ? getGeneration() : -1;
+        Path productsFile = folder.resolve(productsFiles.name(generation));
+        Path reviewsFile = folder.resolve(reviewsFiles.name(generation));
+        List<Product> sorted = new ArrayList<>(products.keySet());
+        sorted.sort(Comparator.comparingInt(Product::getId));
+        int count = sorted.size();
+        long[] reviewOffsets = new long[count];
+        int[] reviewLengths = new int[count];
+        int[][] histograms = new int[count][RATINGS];
+
+        Path reviewsPart = reviewsFile.resolveSibling(reviewsFile.getFileName() + ".part");
+        Path productsPart = productsFile.resolveSibling(productsFile.getFileName() + ".part");
+        try {
+            long reviewsSize;
+            int reviewsChecksum;
+            try (FileChannel channel = create(reviewsPart)) {
+                SnapshotFile.Output out = new SnapshotFile.Output(channel);
+                out.ensure(REVIEWS_HEADER_SIZE);
+                out.buffer.putInt(REVIEWS_MAGIC).putShort(FORMAT_VERSION);
+                for (int i = 0; i < count; i++) {
+                    reviewOffsets[i] = out.position();
+                    for (Review review : products.get(sorted.get(i))) {
+                        histograms[i][review.rating().ordinal()]++;
+                        SnapshotFile.putReview(out, review);
+                    }
+                    reviewLengths[i] = Math.toIntExact(out.position() - reviewOffsets[i]);
+                }
+                reviewsChecksum = out.finish(REVIEWS_MAGIC);
+                reviewsSize = out.position();
+                channel.force(true);
+            }
+
+            try (FileChannel channel = create(productsPart)) {
+                SnapshotFile.Output out = new SnapshotFile.Output(channel);
+                out.ensure(PRODUCTS_HEADER_SIZE);
+                out.buffer.putInt(PRODUCTS_MAGIC).putShort(FORMAT_VERSION).putInt(count)
+                        .putLong(reviewsSize).putInt(reviewsChecksum);
+                int productOffset = Math.addExact(PRODUCTS_HEADER_SIZE, Math.multiplyExact(count, INDEX_ENTRY_SIZE));
+                for (int i = 0; i < count; i++) {
+                    Product product = sorted.get(i);
+                    out.ensure(INDEX_ENTRY_SIZE);
+                    out.buffer.putInt(product.getId()).putInt(productOffset)
+                            .putLong(reviewOffsets[i]).putInt(reviewLengths[i]);
+                    for (int rating = 0; rating < RATINGS; rating++) {
+                        out.buffer.putInt(histograms[i][rating]);
+                    }
+                    productOffset = Math.addExact(productOffset, SnapshotFile.productLength(product));
+                }
+                for (Product product : sorted) {
+                    SnapshotFile.putProduct(out, product);
+                }
+                out.finish(PRODUCTS_MAGIC);
+                channel.force(true);
+            }
+
+            Files.move(reviewsPart, reviewsFile, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(productsPart, productsFile, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(reviewsPart);
+            Files.deleteIfExists(productsPart);
+            throw e;
+        }
+        this.productsFile = productsFile;
+        deleteExcept(generation, previous);
+        for (int i = 0; i < count; i++) {
+            written.accept(sorted.get(i), location(reviewsFile, reviewOffsets[i], reviewLengths[i], histograms[i]));
+        }
+    }
+
+    /**
+     * Restores the products and reviews held in the newest generation of the
+     * segments that can be read.
+     *
+     * @throws IOException if no generation is complete, intact and belongs together
+     */
+    Map<Product, List<Review>> read() throws IOException {
+        return load(this::read);
+    }
+
+    /**
+     * Restores the products held in the newest generation of the segments that
+     * can be read, without their reviews. Each entry gets its rating summary from
+     * the index and the location of its reviews, so the reviews segment is only
+     * checked against the products header, never read.
+     *
+     * @throws IOException if no generation is complete, intact and belongs together
+     */
+    List<ProductEntry> readEntries() throws IOException {
+        return load(this::readEntries);
+    }
+
+    /*
+     * Tries the complete generations newest first, so a damaged pair only costs
+     * the changes it was written with.
+     */
+    private <T> T load(PairReader<T> reader) throws IOException {
+        List<Long> generations = generations();
+        IOException failure = new NoSuchFileException(folder.resolve(productsFiles.name(0)).toString());
+        for (int i = generations.size() - 1; i >= 0; i--) {
+            Path productsFile = folder.resolve(productsFiles.name(generations.get(i)));
+            try {
+                T catalog = reader.read(productsFile, folder.resolve(reviewsFiles.name(generations.get(i))));
+                this.productsFile = productsFile;
+                return catalog;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Skipping segments " + productsFile.getFileName() + " " + e.getMessage(), e);
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private Map<Product, List<Review>> read(Path productsFile, Path reviewsFile) throws IOException {
+        try (FileChannel productsChannel = FileChannel.open(productsFile, StandardOpenOption.READ);
+             FileChannel reviewsChannel = FileChannel.open(reviewsFile, StandardOpenOption.READ)) {
+            SnapshotFile.Input products = SnapshotFile.open(productsChannel, productsFile, PRODUCTS_MAGIC, FORMAT_VERSION);
+            SnapshotFile.Input reviews = SnapshotFile.open(reviewsChannel, reviewsFile, REVIEWS_MAGIC, FORMAT_VERSION);
+            ByteBuffer index = index(products, reviewsChannel, productsFile, reviewsFile);
+            int count = index.limit() / INDEX_ENTRY_SIZE;
+            Map<Product, List<Review>> catalog = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            int[] histogram = new int[RATINGS];
+            for (int entry = 0; entry < index.limit(); entry += INDEX_ENTRY_SIZE) {
+                Product product = SnapshotFile.readProduct(product(products, index, entry));
+                ByteBuffer stored = reviews.at(index.getLong(entry + 2 * Integer.BYTES),
+                        index.getInt(entry + 2 * Integer.BYTES + Long.BYTES));
+                catalog.put(product, SnapshotFile.readReviews(stored, count(histogram(index, entry, histogram))));
+            }
+            return catalog;
+        }
+    }
+
+    private List<ProductEntry> readEntries(Path productsFile, Path reviewsFile) throws IOException {
+        try (FileChannel productsChannel = FileChannel.open(productsFile, StandardOpenOption.READ);
+             FileChannel reviewsChannel = FileChannel.open(reviewsFile, StandardOpenOption.READ)) {
+            SnapshotFile.Input products = SnapshotFile.open(productsChannel, productsFile, PRODUCTS_MAGIC, FORMAT_VERSION);
+            ByteBuffer index = index(products, reviewsChannel, productsFile, reviewsFile);
+            List<ProductEntry> entries = new ArrayList<>(index.limit() / INDEX_ENTRY_SIZE);
+            for (int entry = 0; entry < index.limit(); entry += INDEX_ENTRY_SIZE) {
+                Product product = SnapshotFile.readProduct(product(products, index, entry));
+                int[] histogram = histogram(index, entry, new int[RATINGS]);
+                entries.add(new ProductEntry(product, RatingSummary.of(histogram), location(reviewsFile,
+                        index.getLong(entry + 2 * Integer.BYTES), index.getInt(entry + 2 * Integer.BYTES + Long.BYTES),
+                        histogram)));
+            }
+            return entries;
+        }
+    }
+
+    /*
+     * The generations whose products segment was renamed into place, in order.
+     */
+    private List<Long> generations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        for (Path file : productsFiles.list(folder)) {
+            long generation = productsFiles.numberOf(file);
+            if (Files.exists(folder.resolve(reviewsFiles.name(generation)))) {
+                generations.add(generation);
+            }
+        }
+        return generations;
+    }
+
+    /*
+     * Deletes the segments of every generation other than the new one and the
+     * one kept to fall back on. A segment left behind is only logged, the new
+     * generation is already committed.
+     */
+    private void deleteExcept(long generation, long previous) throws IOException {
+        for (NumberedFiles names : List.of(productsFiles, reviewsFiles)) {
+            for (Path file : names.list(folder)) {
+                long number = names.numberOf(file);
+                if (number != generation && number != previous) {
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        logger.log(Level.WARNING, "Error deleting segment " + file + " " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+    }
+
+    private static ReviewLocation location(Path reviewsFile, long offset, int length, int[] histogram) {
+        return new ReviewLocation(reviewsFile, ReviewLocation.Format.SNAPSHOT, offset, length, count(histogram));
+    }
+
+    /*
+     * Reads the rest of the products header, checks the pair and returns the index.
+     */
+    private static ByteBuffer index(SnapshotFile.Input products, FileChannel reviews, Path productsFile, Path reviewsFile)
+            throws IOException {
+        ByteBuffer header = products.next(Integer.BYTES + Long.BYTES + Integer.BYTES);
+        int count = header.getInt();
+        checkPair(header, reviews, productsFile, reviewsFile);
+        return products.next(Math.multiplyExact(count, INDEX_ENTRY_SIZE));
+    }
+
+    /*
+     * Product records follow the index in index order, so each one ends where the next one starts.
+     */
+    private static ByteBuffer product(SnapshotFile.Input products, ByteBuffer index, int entry) throws IOException {
+        int offset = index.getInt(entry + Integer.BYTES);
+        long end = (entry + INDEX_ENTRY_SIZE < index.limit()) ?
+                index.getInt(entry + INDEX_ENTRY_SIZE + Integer.BYTES) : products.length();
+        return products.at(offset, (int) (end - offset));
+    }
+
+    /*
+     * Compares the size and trailer checksum of the reviews segment with the ones
+     * recorded in the products header, which is read up to the index.
+     */
+    private static void checkPair(ByteBuffer products, FileChannel reviews, Path productsFile, Path reviewsFile)
+            throws IOException {
+        long size = products.getLong();
+        int checksum = products.getInt();
+        ByteBuffer trailer = ByteBuffer.allocate(Integer.BYTES);
+        if (reviews.size() != size || reviews.read(trailer, size - SnapshotFile.TRAILER_SIZE) != Integer.BYTES
+                || trailer.getInt(0) != checksum) {
+            throw new IOException("Segment " + reviewsFile + " does not belong to " + productsFile);
+        }
+    }
+
+    private static int[] histogram(ByteBuffer products, int entry, int[] histogram) {
+        int offset = entry + 3 * Integer.BYTES + Long.BYTES;
+        for (int rating = 0; rating < RATINGS; rating++) {
+            histogram[rating] = products.getInt(offset + rating * Integer.BYTES);
+        }
+        return histogram;
+    }
+
+    private static int count(int[] histogram) {
+        int count = 0;
+        for (int reviews : histogram) {
+            count += reviews;
+        }
+        return count;
+    }
+
+    private static FileChannel create(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+}
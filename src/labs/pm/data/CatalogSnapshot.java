@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * {@code CatalogSnapshot} is an immutable view of every product in the
+ * catalog, with its product version number, as of a given catalog {@code version}.
+ * <br>
+ * Snapshots are shared by all readers of the same version, so reports
+ * can sort and format them without holding any lock.
+ * <br>
+ * Each entry keeps the slot it is given when first published, and revisions are
+ * held in chunks of {@value #CHUNK_SIZE} slots. A writer publishes the next
+ * snapshot with {@link #with(long, ProductEntry)}, which copies the one chunk
+ * holding the entry rather than the whole catalog.
+ * @author AymanElMikh
+ **/
+final class CatalogSnapshot {
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    static final CatalogSnapshot EMPTY = new CatalogSnapshot(-1, new ProductEntry.Revision[0][], 0);
+
+    private final long version;
+    private final ProductEntry.Revision[][] chunks;
+    private final int size;
+
+    private CatalogSnapshot(long version, ProductEntry.Revision[][] chunks, int size) {
+        this.version = version;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /**
+     * Captures the current version of every product in {@code index}, giving
+     * each entry its slot. Must be called before the entries are shared.
+     *
+     * @param version the catalog version of the capture
+     * @param index the primary index to capture
+     * @return a new snapshot tagged with {@code version}
+     */
+    static CatalogSnapshot of(long version, ProductIndex index) {
+        int size = index.size();
+        ProductEntry.Revision[][] chunks = new ProductEntry.Revision[(size + CHUNK_SIZE - 1) >>> CHUNK_BITS][];
+        Arrays.setAll(chunks, chunk -> new ProductEntry.Revision[CHUNK_SIZE]);
+        int[] slot = {0};
+        index.forEach(entry -> {
+            entry.setSlot(slot[0]);
+            chunks[slot[0] >>> CHUNK_BITS][slot[0] & (CHUNK_SIZE - 1)] = entry.getRevision();
+            slot[0]++;
+        });
+        return new CatalogSnapshot(version, chunks, size);
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * Returns the number of slots, which is the slot of the next new entry.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the current revision of every product, in slot order.
+     */
+    List<ProductEntry.Revision> products() {
+        return new Products();
+    }
+
+    /**
+     * Returns a snapshot where the slot of {@code entry} holds its current revision.
+     *
+     * @param version the catalog version the entry was published with
+     */
+    CatalogSnapshot with(long version, ProductEntry entry) {
+        int slot = entry.getSlot();
+        int chunk = slot >>> CHUNK_BITS;
+        ProductEntry.Revision[][] next = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+        next[chunk] = (chunk < chunks.length) ? chunks[chunk].clone() : new ProductEntry.Revision[CHUNK_SIZE];
+        next[chunk][slot & (CHUNK_SIZE - 1)] = entry.getRevision();
+        return new CatalogSnapshot(Math.max(this.version, version), next, Math.max(size, slot + 1));
+    }
+
+    private final class Products extends AbstractList<ProductEntry.Revision> implements RandomAccess {
+
+        @Override
+        public ProductEntry.Revision get(int index) {
+            Objects.checkIndex(index, size);
+            return chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@code CommentDictionary} numbers the distinct review comments, so a review can
+ * refer to its comment by id instead of holding a string of its own.
+ * <br>
+ * Review comments come from a small vocabulary, so the dictionary holds each
+ * of them once for the whole catalog. Comments longer than {@value #MAX_LENGTH}
+ * characters, and new comments once the dictionary holds {@value #MAX_SIZE}
+ * of them, are not numbered and must be stored as they are.
+ * <br>
+ * Ids are never reused or removed. Neither lookup takes a lock for a known
+ * comment: ids live in a concurrent map, and the comments array is republished
+ * through a volatile field before a new id is handed out. Only numbering a new
+ * comment is serialized.
+ * @author AymanElMikh
+ **/
+final class CommentDictionary {
+
+    static final int MAX_SIZE = 1 << 16;
+    static final int MAX_LENGTH = 128;
+
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private static final Object lock = new Object();
+    private static volatile String[] comments = new String[64];
+    private static int size;
+
+    private CommentDictionary() {
+    }
+
+    /**
+     * Returns the id of {@code comment}, numbering it if it is new.
+     *
+     * @return the id, or {@code -1} if the comment is not numbered
+     */
+    static int encode(String comment) {
+        if (comment.length() > MAX_LENGTH) {
+            return -1;
+        }
+        Integer id = ids.get(comment);
+        if (id == null) {
+            id = ids.computeIfAbsent(comment, CommentDictionary::number);
+        }
+        return (id == null) ? -1 : id;
+    }
+
+    private static Integer number(String comment) {
+        synchronized (lock) {
+            if (size == MAX_SIZE) {
+                return null;
+            }
+            String[] array = (size == comments.length) ? Arrays.copyOf(comments, size * 2) : comments;
+            array[size] = comment;
+            comments = array;
+            return size++;
+        }
+    }
+
+    /**
+     * Returns the comment numbered {@code id} by {@link #encode(String)}.
+     */
+    static String decode(int id) {
+        return comments[id];
+    }
+}
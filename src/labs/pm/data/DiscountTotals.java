@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code DiscountTotals} maintains the discount totals of the catalog per
+ * {@link Rating} as products are added, re-rated and removed.
+ * <p>
+ * A drink is discounted at discount time and a food on its best before day,
+ * so the full discounts of drinks are summed per rating, and the ones of food
+ * per rating and best before day. Sums are kept exactly, in cents. Reading the
+ * totals for a given day and time of day costs one lookup per rating, whatever
+ * the size of the catalog.
+ * </p>
+ * <p>
+ * Days before the latest day read are never read again, so their food sums
+ * are dropped and later updates to them are ignored.
+ * </p>
+ * <p>
+ * Nothing takes a lock. Sums are {@link LongAdder}s, so writers of different
+ * stripes do not contend, and a writer bumps the version after its sums, so a
+ * reader that sees a version also sees the changes counted by it. Totals read
+ * while a product is being re-rated may count it under neither or both ratings,
+ * with a version that is bumped once the move is complete.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class DiscountTotals {
+
+    private static final int RATINGS = Rating.values().length;
+
+    /**
+     * The discount totals per rating, for every rating that has products,
+     * as of one version of the totals.
+     */
+    record Totals(long version, LocalDate day, boolean drinkDiscount, Map<Rating, BigDecimal> discounts) {}
+
+    private final LongAdder[] products = adders();
+    private final LongAdder[] drinkCents = adders();
+    private final Map<LocalDate, LongAdder[]> foodCents = new ConcurrentHashMap<>();
+    private final LongAdder version = new LongAdder();
+    private volatile LocalDate today = LocalDate.MIN;
+
+    void add(Product product) {
+        update(product, 1);
+        version.increment();
+    }
+
+    /**
+     * Moves a product to the totals of its new version. Nothing changes when
+     * the rating stays the same.
+     */
+    void replace(Product previous, Product next) {
+        if (previous.getRating() == next.getRating()) {
+            return;
+        }
+        update(previous, -1);
+        update(next, 1);
+        version.increment();
+    }
+
+    /**
+     * Must not race with any other update.
+     */
+    void clear() {
+        Arrays.stream(products).forEach(LongAdder::reset);
+        Arrays.stream(drinkCents).forEach(LongAdder::reset);
+        foodCents.clear();
+        version.increment();
+    }
+
+    /**
+     * Returns the totals that apply on {@code day}.
+     *
+     * @param drinkDiscount whether drinks are discounted at the time of the call
+     */
+    Totals get(LocalDate day, boolean drinkDiscount) {
+        long read = version.sum();
+        if (day.isAfter(today)) {
+            today = day;
+            foodCents.keySet().removeIf(bestBefore -> bestBefore.isBefore(day));
+        }
+        Map<Rating, BigDecimal> discounts = new EnumMap<>(Rating.class);
+        LongAdder[] food = foodCents.get(day);
+        for (Rating rating : Rating.values()) {
+            int i = rating.ordinal();
+            if (products[i].sum() > 0) {
+                long cents = ((drinkDiscount) ? drinkCents[i].sum() : 0) + ((food == null) ? 0 : food[i].sum());
+                discounts.put(rating, BigDecimal.valueOf(cents, 2));
+            }
+        }
+        return new Totals(read, day, drinkDiscount, discounts);
+    }
+
+    private void update(Product product, int sign) {
+        int rating = product.getRating().ordinal();
+        long cents = sign * product.getFullDiscountCents();
+        products[rating].add(sign);
+        switch (product) {
+            case Drink drink -> drinkCents[rating].add(cents);
+            case Food food -> {
+                if (!food.getBestBefore().isBefore(today)) {
+                    foodCents.computeIfAbsent(food.getBestBefore(), ignored -> adders())[rating].add(cents);
+                }
+            }
+        }
+    }
+
+    private static LongAdder[] adders() {
+        LongAdder[] adders = new LongAdder[RATINGS];
+        Arrays.setAll(adders, ignored -> new LongAdder());
+        return adders;
+    }
+}
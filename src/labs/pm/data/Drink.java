@@ -27,23 +27,42 @@ import java.time.LocalTime;
  **/
 public final class Drink extends Product{
 
+    static final LocalTime DISCOUNT_FROM = LocalTime.of(17, 30);
+    static final LocalTime DISCOUNT_UNTIL = LocalTime.of(18, 30);
+
+    private static final long serialVersionUID = 8688776408010262038L;
+
     Drink(int id, String name, BigDecimal price, Rating rating) {
         super(id, name, price, rating);
     }
 
+    Drink(int id, String name, long priceUnits, int priceScale, Rating rating) {
+        super(id, name, priceUnits, priceScale, rating);
+    }
+
     @Override
     public BigDecimal getDiscount(){
 
-        LocalTime now = LocalTime.now();
-
-        return (now.isAfter(LocalTime.of(17,30)) &&
-                now.isBefore(LocalTime.of(18, 30)) ?
+        return (isDiscountTime(LocalTime.now()) ?
                 super.getDiscount() : BigDecimal.ZERO);
     }
 
+    /**
+     * Tells whether drinks are discounted at {@code time}, strictly between
+     * {@code DISCOUNT_FROM} and {@code DISCOUNT_UNTIL}.
+     */
+    static boolean isDiscountTime(LocalTime time){
+        return time.isAfter(DISCOUNT_FROM) && time.isBefore(DISCOUNT_UNTIL);
+    }
+
     @Override
     public Product applyRating(Rating newRating) {
-        return new Drink(getId(), getName(), getPrice(), newRating);
+        return new Drink(getId(), getName(), getPriceUnits(), getPriceScale(), newRating);
+    }
+
+    private Object readResolve() {
+        SerialFields fields = getSerialFields();
+        return new Drink(fields.id(), fields.name(), fields.price(), fields.rating());
     }
 
 }
\ No newline at end of file
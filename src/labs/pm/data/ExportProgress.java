@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+/**
+ * {@code ExportProgress} reports how far a bulk report export has got:
+ * the products exported out of the catalog being exported, the reports
+ * written for them and the compressed bytes written so far.
+ * @author AymanElMikh
+ **/
+public record ExportProgress(long products, long totalProducts, long reports, long bytes) {
+}
@@ -27,6 +27,8 @@ import java.time.LocalDate;
  **/
 public final class Food extends Product{
 
+    private static final long serialVersionUID = 3244939695667042L;
+
     private final LocalDate bestBefore;
 
     Food(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
@@ -34,6 +36,11 @@ public final class Food extends Product{
         this.bestBefore = bestBefore;
     }
 
+    Food(int id, String name, long priceUnits, int priceScale, Rating rating, LocalDate bestBefore) {
+        super(id, name, priceUnits, priceScale, rating);
+        this.bestBefore = bestBefore;
+    }
+
     @Override
     public LocalDate getBestBefore(){
         return bestBefore;
@@ -46,7 +53,12 @@ public final class Food extends Product{
 
     @Override
     public Product applyRating(Rating newRating) {
-        return new Food(getId(), getName(), getPrice(), newRating, bestBefore);
+        return new Food(getId(), getName(), getPriceUnits(), getPriceScale(), newRating, bestBefore);
+    }
+
+    private Object readResolve() {
+        SerialFields fields = getSerialFields();
+        return new Food(fields.id(), fields.name(), fields.price(), fields.rating(), bestBefore);
     }
 
     @Override
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code LineCache} keeps rendered product lines and review blocks.
+ * <p>
+ * Lines are keyed by product id, product version number and language tag, so
+ * a new product version never sees the lines of an older one: they are simply
+ * not looked up again and age out. The cache is bounded by the total number of
+ * cached characters and evicts the least recently used lines first.
+ * </p>
+ * <p>
+ * Keys are spread over {@value #STRIPES} stripes, each with its own lock and an
+ * equal share of the capacity, so concurrent reports rarely wait on each other.
+ * Eviction is least recently used within a stripe.
+ * </p>
+ * <p>
+ * A drink is best before the current day, so every line is dropped when the
+ * date changes.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class LineCache {
+
+    private static final int STRIPES = 16;
+
+    /**
+     * Identifies a rendered product line, or the rendered reviews of a product.
+     */
+    record Key(int id, long version, String languageTag, boolean reviews) {
+
+        static Key product(ProductEntry.Revision revision, String languageTag) {
+            return new Key(revision.product().getId(), revision.version(), languageTag, false);
+        }
+
+        static Key reviews(ProductEntry.Revision revision, String languageTag) {
+            return new Key(revision.product().getId(), revision.version(), languageTag, true);
+        }
+    }
+
+    /*
+     * The lines of one stripe, guarded by the stripe itself.
+     */
+    private static final class Stripe {
+
+        private final Map<Key, String> lines = new LinkedHashMap<>(16, 0.75f, true);
+        private long cached;
+        private LocalDate day = LocalDate.now();
+    }
+
+    private final long capacity;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity the maximum number of cached characters, {@code 0} disables caching
+     */
+    LineCache(long capacity) {
+        this.capacity = (capacity + STRIPES - 1) / STRIPES;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * @return the cached line, or {@code null} if it has to be rendered
+     */
+    String get(Key key) {
+        String line = null;
+        if (capacity > 0) {
+            LocalDate today = LocalDate.now();
+            Stripe stripe = stripe(key);
+            synchronized (stripe) {
+                if (!today.equals(stripe.day)) {
+                    stripe.lines.clear();
+                    stripe.cached = 0;
+                    stripe.day = today;
+                }
+                line = stripe.lines.get(key);
+            }
+        }
+        (line == null ? misses : hits).increment();
+        return line;
+    }
+
+    void put(Key key, String line) {
+        if (line.length() > capacity) {
+            return;
+        }
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            String previous = stripe.lines.put(key, line);
+            stripe.cached += line.length() - ((previous == null) ? 0 : previous.length());
+            Iterator<String> eldest = stripe.lines.values().iterator();
+            while (stripe.cached > capacity) {
+                stripe.cached -= eldest.next().length();
+                eldest.remove();
+            }
+        }
+    }
+
+    private Stripe stripe(Key key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        int size = 0;
+        long cached = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.lines.size();
+                cached += stripe.cached;
+            }
+        }
+        return size + " lines, " + cached + " chars, " + getHits() + " hits, " + getMisses() + " misses";
+    }
+}
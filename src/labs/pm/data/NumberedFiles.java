@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * {@code NumberedFiles} names a family of files after a configured pattern such
+ * as {@code journal{0}.log}, where {@code {0}} is a sequence number. A format
+ * such as {@code {0,number,#}} may follow the index, it only matters to the
+ * {@code MessageFormat} users of the same pattern.
+ * <br>
+ * Numbers are zero-padded so the names also sort in sequence order.
+ * @author AymanElMikh
+ **/
+final class NumberedFiles {
+
+    private final String prefix;
+    private final String suffix;
+
+    NumberedFiles(String pattern) {
+        String[] parts = pattern.split("\\{0(,[^}]*)?\\}", -1);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Expected one {0} in file pattern " + pattern);
+        }
+        prefix = parts[0];
+        suffix = parts[1];
+    }
+
+    String name(long number) {
+        return prefix + String.format("%015d", number) + suffix;
+    }
+
+    /**
+     * Returns the sequence number in the name of {@code file}.
+     *
+     * @return the number, or {@code -1} if the file is not part of this family
+     */
+    long numberOf(Path file) {
+        String name = file.getFileName().toString();
+        if (name.length() > prefix.length() + suffix.length() && name.startsWith(prefix) && name.endsWith(suffix)) {
+            try {
+                return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Lists the files of this family in {@code folder}, in sequence order.
+     */
+    List<Path> list(Path folder) throws IOException {
+        if (Files.notExists(folder)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(folder)) {
+            return files
+                    .filter(file -> numberOf(file) >= 0)
+                    .sorted(Comparator.comparingLong(this::numberOf))
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * {@code PackedReviews} is a list of reviews stored as one {@code int} per review.
+ * <br>
+ * A review is packed as its rating ordinal in the low {@value #RATING_BITS} bits
+ * and the id of its comment in the {@link CommentDictionary} above them. A comment
+ * the dictionary does not number is kept in a per-list array instead, and the
+ * {@code LITERAL} bit marks the review as pointing into that array.
+ * <br>
+ * {@link Review} objects are created on each read, so callers that keep reviews
+ * around should copy them. The list supports adding reviews and removing ranges,
+ * not replacing them, and is not thread safe.
+ * @author AymanElMikh
+ **/
+final class PackedReviews extends AbstractList<Review> implements RandomAccess {
+
+    private static final int RATING_BITS = 3;
+    private static final int RATING_MASK = (1 << RATING_BITS) - 1;
+    private static final int LITERAL = 1 << RATING_BITS;
+    private static final int ID_SHIFT = RATING_BITS + 1;
+    private static final Rating[] RATINGS = Rating.values();
+    private static final int[] NO_CODES = {};
+
+    private int[] codes;
+    private int size;
+    private String[] literals;
+    private int literalCount;
+
+    PackedReviews() {
+        this.codes = NO_CODES;
+    }
+
+    private PackedReviews(int capacity) {
+        this.codes = new int[capacity];
+    }
+
+    static PackedReviews of(Collection<Review> reviews) {
+        if (reviews instanceof PackedReviews packed) {
+            return packed;
+        }
+        PackedReviews packed = new PackedReviews(reviews.size());
+        for (Review review : reviews) {
+            packed.add(review);
+        }
+        return packed;
+    }
+
+    @Override
+    public Review get(int index) {
+        int code = codes[Objects.checkIndex(index, size)];
+        int id = code >>> ID_SHIFT;
+        String comments = ((code & LITERAL) == 0) ? CommentDictionary.decode(id) : literals[id];
+        return new Review(RATINGS[code & RATING_MASK], comments);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(Review review) {
+        int id = CommentDictionary.encode(review.comments());
+        int code;
+        if (id >= 0) {
+            code = id << ID_SHIFT;
+        } else {
+            if (literals == null || literalCount == literals.length) {
+                literals = Arrays.copyOf(literals == null ? new String[0] : literals, Math.max(4, literalCount * 2));
+            }
+            literals[literalCount] = review.comments();
+            code = (literalCount++ << ID_SHIFT) | LITERAL;
+        }
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(4, size + (size >> 1)));
+        }
+        codes[size++] = code | review.rating().ordinal();
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Review> reviews) {
+        if (size + reviews.size() > codes.length) {
+            codes = Arrays.copyOf(codes, Math.max(size + reviews.size(), size + (size >> 1)));
+        }
+        for (Review review : reviews) {
+            add(review);
+        }
+        return !reviews.isEmpty();
+    }
+
+    @Override
+    public Review remove(int index) {
+        Review review = get(index);
+        removeRange(index, index + 1);
+        return review;
+    }
+
+    /*
+     * Literals are renumbered after a removal, so the array only holds the
+     * comments of the remaining reviews.
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        System.arraycopy(codes, toIndex, codes, fromIndex, size - toIndex);
+        size -= toIndex - fromIndex;
+        if (literals != null) {
+            String[] remaining = new String[literalCount];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if ((codes[i] & LITERAL) != 0) {
+                    remaining[count] = literals[codes[i] >>> ID_SHIFT];
+                    codes[i] = (count++ << ID_SHIFT) | (codes[i] & (LITERAL | RATING_MASK));
+                }
+            }
+            literals = (count == 0) ? null : Arrays.copyOf(remaining, count);
+            literalCount = count;
+        }
+        modCount++;
+    }
+}
@@ -19,6 +19,10 @@
 
 package labs.pm.data;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.time.LocalDate;
@@ -34,6 +38,14 @@ import static java.math.RoundingMode.HALF_UP;
  * <br>
  * Each product can have a discount, calculated based on a
  * {@code DISCOUNT_RATE discount rate}
+ * <br>
+ * The price is held as a fixed-point number, a {@code long} count of units of
+ * {@code 10^-scale}, so cents for a price such as {@code 1.99}. Discounts are
+ * computed on those units with {@code HALF_UP} rounding, and a {@code BigDecimal}
+ * is only created when a price or discount is asked for as one.
+ * <br>
+ * The serialized form keeps the {@code BigDecimal} price of earlier versions,
+ * so catalogs dumped with Java serialization can still be restored.
  * @version 1.0
  * @author Ayman ElMikh
  */
@@ -42,15 +54,49 @@ public sealed abstract class Product implements Rateable<Product>, Serializable
 
     public static final BigDecimal DISCOUNT_RATE = BigDecimal.valueOf(0.1);
 
+    private static final long serialVersionUID = 5693256780462812615L;
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("id", int.class),
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("price", BigDecimal.class),
+            new ObjectStreamField("rating", Rating.class)
+    };
+    private static final long RATE_UNITS = DISCOUNT_RATE.unscaledValue().longValueExact();
+    private static final int RATE_SCALE = DISCOUNT_RATE.scale();
+    private static final int DISCOUNT_SCALE = 2;
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L,
+            10_000_000L, 100_000_000L, 1_000_000_000L, 10_000_000_000L, 100_000_000_000L,
+            1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+            10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L};
+
+    /**
+     * The serialized fields of a product, kept by {@code readObject} until
+     * {@code readResolve} builds the product from them.
+     */
+    record SerialFields(int id, String name, BigDecimal price, Rating rating) {}
+
     private final int id;
     private final String name;
-    private final BigDecimal price;
+    private final long priceUnits;
+    private final int priceScale;
     private final Rating rating;
+    private transient SerialFields serialFields;
 
+    /**
+     * @throws ArithmeticException if the unscaled price does not fit in a {@code long}
+     */
     Product(int id, String name, BigDecimal price, Rating rating) {
+        this(id, name, price.unscaledValue().longValueExact(), price.scale(), rating);
+    }
+
+    /**
+     * Creates a product priced at {@code priceUnits * 10^-priceScale}.
+     */
+    Product(int id, String name, long priceUnits, int priceScale, Rating rating) {
         this.id = id;
         this.name = name;
-        this.price = price;
+        this.priceUnits = priceUnits;
+        this.priceScale = priceScale;
         this.rating = rating;
     }
 
@@ -71,7 +117,18 @@ public sealed abstract class Product implements Rateable<Product>, Serializable
     }
 
     public BigDecimal getPrice() {
-        return price;
+        return BigDecimal.valueOf(priceUnits, priceScale);
+    }
+
+    /**
+     * Returns the price in units of {@code 10^-}{@link #getPriceScale()}.
+     */
+    long getPriceUnits() {
+        return priceUnits;
+    }
+
+    int getPriceScale() {
+        return priceScale;
     }
 
     public LocalDate getBestBefore(){
@@ -91,7 +148,55 @@ public sealed abstract class Product implements Rateable<Product>, Serializable
      */
 
     public BigDecimal getDiscount(){
-        return  price.multiply(DISCOUNT_RATE).setScale(2, HALF_UP);
+        return  getFullDiscount();
+    }
+
+    /**
+     * Returns the discount the product gets whenever a discount applies to it,
+     * whatever the current date and time.
+     *
+     * @return the price multiplied by the {@code DISCOUNT_RATE}, rounded to two decimal places
+     */
+    BigDecimal getFullDiscount(){
+        try {
+            return BigDecimal.valueOf(getFullDiscountCents(), DISCOUNT_SCALE);
+        } catch (ArithmeticException e) {
+            return exactDiscount();
+        }
+    }
+
+    /**
+     * Returns {@link #getFullDiscount()} in cents.
+     * <br>
+     * The price units times the rate units are exact at the sum of both scales,
+     * and are then rounded to cents. Prices too large for that to fit in a
+     * {@code long} go through {@code BigDecimal}, with the same result.
+     *
+     * @return the price multiplied by the {@code DISCOUNT_RATE}, rounded to two
+     * decimal places, in cents
+     * @throws ArithmeticException if the discount does not fit in a {@code long} of cents
+     */
+    long getFullDiscountCents(){
+        int excess = priceScale + RATE_SCALE - DISCOUNT_SCALE;
+        try {
+            long units = Math.multiplyExact(priceUnits, RATE_UNITS);
+            if (excess <= 0 && -excess < POWERS_OF_TEN.length) {
+                return Math.multiplyExact(units, POWERS_OF_TEN[-excess]);
+            }
+            if (excess > 0 && excess < POWERS_OF_TEN.length) {
+                long divisor = POWERS_OF_TEN[excess];
+                long cents = units / divisor;
+                long remainder = Math.abs(units % divisor);
+                return (remainder >= divisor - remainder) ? cents + Long.signum(units) : cents;
+            }
+        } catch (ArithmeticException e) {
+            // falls through to BigDecimal
+        }
+        return exactDiscount().unscaledValue().longValueExact();
+    }
+
+    private BigDecimal exactDiscount(){
+        return getPrice().multiply(DISCOUNT_RATE).setScale(DISCOUNT_SCALE, HALF_UP);
     }
 
     public Rating getRating(){
@@ -105,10 +210,33 @@ public sealed abstract class Product implements Rateable<Product>, Serializable
     public String toString() {
         return id + ", " +
                 name  + ", " +
-                price + " , " +
+                getPrice() + " , " +
                 rating.getStars();
     }
 
+    /**
+     * Returns the fields read by {@code readObject}, for subclasses to resolve
+     * a deserialized product into one built by its constructor.
+     */
+    SerialFields getSerialFields() {
+        return serialFields;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("id", id);
+        fields.put("name", name);
+        fields.put("price", getPrice());
+        fields.put("rating", rating);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        serialFields = new SerialFields(fields.get("id", 0), (String) fields.get("name", null),
+                (BigDecimal) fields.get("price", null), (Rating) fields.get("rating", null));
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
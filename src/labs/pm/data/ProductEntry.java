@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code ProductEntry} holds everything the catalog knows about one product:
+ * its current version, its reviews and the {@link RatingSummary} of those reviews.
+ * <br>
+ * A lazily loaded entry keeps only the {@link ReviewLocation} of the reviews it
+ * was loaded with, and holds in memory just the reviews added since.
+ * Reviews held in memory are {@link PackedReviews}, a few bytes each.
+ * <br>
+ * Each version of the product is published together with a version number
+ * drawn from a counter shared by all entries, so a version number identifies
+ * one product version even across entries replaced by a reload.
+ * <br>
+ * The product and summary are published through volatile fields so they can be
+ * read without a lock, the review list and location must only be touched under
+ * the stripe lock of the product.
+ * @author AymanElMikh
+ **/
+final class ProductEntry {
+
+    /**
+     * One version of a product and its version number.
+     */
+    record Revision(Product product, long version) {}
+
+    private static final AtomicLong versions = new AtomicLong();
+
+    private volatile Revision revision;
+    private final List<Review> reviews;
+    private volatile RatingSummary summary;
+    private ReviewLocation location;
+    private int slot = -1;
+
+    ProductEntry(Product product, List<Review> reviews) {
+        this.revision = new Revision(product, versions.incrementAndGet());
+        this.reviews = PackedReviews.of(reviews);
+        this.summary = RatingSummary.of(reviews);
+    }
+
+    /**
+     * Creates a lazily loaded entry whose reviews stay on disk at {@code location}.
+     *
+     * @param summary the summary of the reviews at {@code location}
+     */
+    ProductEntry(Product product, RatingSummary summary, ReviewLocation location) {
+        this.revision = new Revision(product, versions.incrementAndGet());
+        this.reviews = new PackedReviews();
+        this.summary = summary;
+        this.location = location;
+    }
+
+    Product getProduct() {
+        return revision.product();
+    }
+
+    Revision getRevision() {
+        return revision;
+    }
+
+    /**
+     * Returns the slot of the entry in {@link CatalogSnapshot catalog snapshots},
+     * or {@code -1} before it is given one.
+     */
+    int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Gives the entry its snapshot slot, before the entry is indexed.
+     */
+    void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    /**
+     * Returns the reviews held in memory: every review of an eagerly loaded entry,
+     * or the reviews added since {@link #getLocation()} otherwise.
+     * Each read creates a new {@link Review}.
+     */
+    List<Review> getReviews() {
+        return reviews;
+    }
+
+    /**
+     * Returns where the reviews of a lazily loaded entry are stored.
+     *
+     * @return the location, or {@code null} if every review is held in memory
+     */
+    ReviewLocation getLocation() {
+        return location;
+    }
+
+    /**
+     * Moves the stored reviews to {@code location}, which holds the reviews of the
+     * previous location followed by the first {@code added} reviews held in memory.
+     */
+    void relocate(ReviewLocation location, int added) {
+        this.location = location;
+        reviews.subList(0, added).clear();
+    }
+
+    RatingSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * Adds a review and updates the running summary in constant time.
+     *
+     * @param review the review to add
+     * @return the updated summary
+     */
+    RatingSummary addReview(Review review) {
+        reviews.add(review);
+        summary = summary.add(review.rating());
+        return summary;
+    }
+
+    /**
+     * Adds reviews in order and updates the running summary once for all of them.
+     *
+     * @param reviews the reviews to add
+     * @return the updated summary
+     */
+    RatingSummary addReviews(List<Review> reviews) {
+        this.reviews.addAll(reviews);
+        summary = summary.addAll(reviews);
+        return summary;
+    }
+
+    /**
+     * Publishes a new version of the product under a new version number.
+     */
+    void setProduct(Product product) {
+        this.revision = new Revision(product, versions.incrementAndGet());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Consumer;
+
+/**
+ * {@code ProductIndex} is the primary index of the catalog, mapping a
+ * product id to the {@link ProductEntry} of that product.
+ * <br>
+ * Keys are kept in a primitive {@code int[]} with open addressing and
+ * linear probing, so lookups never box the id and never scan the catalog.
+ * <br>
+ * Lookups and iteration take no lock: a slot key is written before its
+ * entry is published with release semantics, and a grown table is only
+ * published once fully copied. Mutations must be serialized by the caller.
+ * @author AymanElMikh
+ **/
+final class ProductIndex {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(ProductEntry[].class);
+
+    private record Table(int[] keys, ProductEntry[] values) {
+
+        Table(int capacity) {
+            this(new int[capacity], new ProductEntry[capacity]);
+        }
+
+        ProductEntry slot(int i) {
+            return (ProductEntry) SLOT.getAcquire(values, i);
+        }
+    }
+
+    private volatile Table table;
+    private volatile int size;
+
+    ProductIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    ProductIndex(int expectedSize) {
+        table = new Table(tableSizeFor((int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR)));
+    }
+
+    ProductEntry get(int id) {
+        Table t = table;
+        int mask = t.keys.length - 1;
+        ProductEntry entry;
+        for (int i = slot(id, mask); (entry = t.slot(i)) != null; i = (i + 1) & mask) {
+            if (t.keys[i] == id) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores {@code entry} under {@code id}, replacing any previous entry.
+     *
+     * @param id the product id
+     * @param entry the entry to index
+     * @return the previously indexed entry, or {@code null} if there was none
+     */
+    ProductEntry put(int id, ProductEntry entry) {
+        Table t = table;
+        int mask = t.keys.length - 1;
+        int i = slot(id, mask);
+        for (ProductEntry current; (current = t.slot(i)) != null; i = (i + 1) & mask) {
+            if (t.keys[i] == id) {
+                SLOT.setRelease(t.values, i, entry);
+                return current;
+            }
+        }
+        t.keys[i] = id;
+        SLOT.setRelease(t.values, i, entry);
+        if (++size > t.keys.length * LOAD_FACTOR) {
+            table = resize(t, t.keys.length << 1);
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Visits every indexed entry, in no particular order.
+     *
+     * @param action the action to apply to each entry
+     */
+    void forEach(Consumer<ProductEntry> action) {
+        Table t = table;
+        for (int i = 0; i < t.values.length; i++) {
+            ProductEntry entry = t.slot(i);
+            if (entry != null) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    private static Table resize(Table old, int capacity) {
+        Table t = new Table(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < old.values.length; j++) {
+            if (old.values[j] != null) {
+                int i = slot(old.keys[j], mask);
+                while (t.values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                t.keys[i] = old.keys[j];
+                t.values[i] = old.values[j];
+            }
+        }
+        return t;
+    }
+
+    private static int slot(int id, int mask) {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        return Math.max(DEFAULT_CAPACITY, Integer.highestOneBit(capacity - 1) << 1);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * {@code ProductListing} selects one page of a filtered and sorted listing.
+ * <p>
+ * Products are filtered before they are ordered. When the page ends before the
+ * last product of the catalog, only the first {@code offset + limit} products
+ * in order are kept, in a bounded heap, instead of sorting every match.
+ * Products that compare equal are ordered by id, so consecutive pages of the
+ * same listing neither repeat nor skip a product.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class ProductListing {
+
+    private ProductListing() {
+    }
+
+    /**
+     * Returns the products at positions {@code offset} to {@code offset + limit - 1}
+     * of the products accepted by {@code filter}, in {@code sorter} order.
+     */
+    static List<ProductEntry.Revision> select(Iterable<ProductEntry.Revision> products, int size,
+                                              Predicate<Product> filter, Comparator<Product> sorter,
+                                              int offset, int limit) {
+        Comparator<ProductEntry.Revision> order = Comparator.comparing(ProductEntry.Revision::product,
+                sorter.thenComparingInt(Product::getId));
+        long bound = (long) offset + limit;
+        List<ProductEntry.Revision> selected;
+        if (bound >= size) {
+            selected = new ArrayList<>();
+            for (ProductEntry.Revision revision : products) {
+                if (filter.test(revision.product())) {
+                    selected.add(revision);
+                }
+            }
+            selected.sort(order);
+        } else {
+            int capacity = (int) bound;
+            PriorityQueue<ProductEntry.Revision> heap = new PriorityQueue<>(Math.max(1, capacity), order.reversed());
+            for (ProductEntry.Revision revision : products) {
+                if (filter.test(revision.product())) {
+                    if (heap.size() < capacity) {
+                        heap.add(revision);
+                    } else if (capacity > 0 && order.compare(revision, heap.peek()) < 0) {
+                        heap.poll();
+                        heap.add(revision);
+                    }
+                }
+            }
+            selected = new ArrayList<>(heap);
+            selected.sort(order);
+        }
+        if (offset >= selected.size()) {
+            return Collections.emptyList();
+        }
+        return selected.subList(offset, (int) Math.min(selected.size(), bound));
+    }
+}
@@ -22,25 +22,38 @@ package labs.pm.data;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
-import java.text.NumberFormat;
 import java.text.ParseException;
-import java.time.Instant;
+import java.time.DateTimeException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.time.format.FormatStyle;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author AymanElMikh
@@ -48,16 +61,62 @@ import java.util.stream.Collectors;
 public class ProductManager {
 
     private final ResourceBundle config = ResourceBundle.getBundle("labs.pm.data.config");
-    private final MessageFormat productFormat = new MessageFormat(config.getString("product.data.format"));
-    private final MessageFormat reviewFormat = new MessageFormat(config.getString("review.data.format"));
-    private final Path reportFolder = Path.of(config.getString("reports.folder"));
-    private final Path dataFolder = Path.of(config.getString("data.folder"));
-    private final Path tempFolder = Path.of(config.getString("temp.folder"));
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock readLock = lock.readLock();
-    private final Lock writeLock = lock.writeLock();
-
-    private  Map<Product, List<Review>> products = new HashMap<>();
+    private final Path reportFolder = Path.of(setting("reports.folder"));
+    private final Path dataFolder = Path.of(setting("data.folder"));
+    private final Path tempFolder = Path.of(setting("temp.folder"));
+    private final boolean parallelLoad = Boolean.parseBoolean(setting("data.load.parallel"));
+    private final int loadConcurrency = Integer.parseInt(setting("data.load.concurrency"));
+    private final NumberedFiles snapshotFiles = new NumberedFiles(setting("snapshot.file"));
+    private final NumberedFiles journalFiles = new NumberedFiles(setting("journal.file"));
+    private final boolean journalEnabled = Boolean.parseBoolean(setting("journal.enabled"));
+    private final long compactionInterval = Long.parseLong(setting("journal.compaction.interval.s"));
+    private final boolean lazyReviews = Boolean.parseBoolean(setting("reviews.lazy"));
+    private final ReviewStore reviewStore = new ReviewStore(Long.parseLong(setting("reviews.cache.size")));
+    private final boolean segmentLayout = "segments".equals(setting("data.layout"));
+    private final LineCache lineCache = new LineCache(Long.parseLong(setting("format.cache.size")));
+    private final ReportWriter reportWriter = new ReportWriter(
+            Integer.parseInt(setting("reports.writers")), Integer.parseInt(setting("reports.queue.size")));
+    private final ReportStore reportStore = Boolean.parseBoolean(setting("reports.store.enabled")) ?
+            new ReportStore(reportFolder.resolve(setting("reports.store.folder")), setting("report.store.file"), reportWriter) : null;
+    private final CatalogSegments segments = new CatalogSegments(dataFolder,
+            new NumberedFiles(setting("segment.products.file")), new NumberedFiles(setting("segment.reviews.file")));
+    private final ProductManagerMetrics metrics = new ProductManagerMetrics(
+            Boolean.parseBoolean(setting("metrics.enabled")), this::catalogSize, this::reviewCount,
+            lineCache::getHits, lineCache::getMisses);
+    private ReviewJournal journal;
+    private long compactedVersion;
+
+    /*
+     * Writers serialize per product on a stripe lock, so reviews of different
+     * products proceed in parallel. Every write bumps the catalog version and
+     * publishes the next snapshot, and whole-catalog reads use the current
+     * snapshot without taking any lock.
+     */
+    private static final int LOCK_STRIPES = 64;
+    private final Lock indexLock = metrics.newLock(metrics.indexLockWait, metrics.indexLockHold);
+    private final Lock[] stripes = new Lock[LOCK_STRIPES];
+
+    /*
+     * With reviews.combining, concurrent reviews of a stripe are applied together
+     * by one thread, and a product is rated once per group of reviews.
+     */
+    private final ReviewCombiner combiner = Boolean.parseBoolean(setting("reviews.combining")) ?
+            new ReviewCombiner(stripes, this::applyReviews) : null;
+
+    private volatile ProductIndex index = new ProductIndex();
+    private final SecondaryIndexes secondaryIndexes = new SecondaryIndexes();
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>(CatalogSnapshot.EMPTY);
+
+    /*
+     * Discount totals are maintained on every write, and their formatted form
+     * is kept per locale until the totals, the day or the drink discount change.
+     */
+    private final DiscountTotals discountTotals = new DiscountTotals();
+    private final Map<String, FormattedDiscounts> formattedDiscounts = new ConcurrentHashMap<>();
+
+    private record FormattedDiscounts(long version, LocalDate day, boolean drinkDiscount,
+                                      Map<String, String> discounts){}
 
     private static final Map<String, ResourceFormatter> formatters =
             Map.of("en-GB", new ResourceFormatter(Locale.UK),
@@ -66,14 +125,40 @@ public class ProductManager {
                     "fr-FR", new ResourceFormatter(Locale.FRANCE),
                     "zh-CN", new ResourceFormatter(Locale.CHINA));
     private static final Logger logger = Logger.getLogger(ProductManager.class.getName());
-    private static final ProductManager productManager = new ProductManager();
+    private static final int RELOCATION_RETRIES = 3;
+
+    /*
+     * Loaded lazily so the data folder is not read while ProductManager itself
+     * is being initialized, parallel loader threads would block on its static fields.
+     */
+    private static class Holder {
+        private static final ProductManager productManager = new ProductManager();
+    }
 
     private ProductManager(){
+        Arrays.setAll(stripes, i -> metrics.newLock(metrics.stripeLockWait, metrics.stripeLockHold));
         loadAllData();
+        metrics.register();
+        if (journal != null && compactionInterval > 0) {
+            ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "review-journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactJournal, compactionInterval, compactionInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    /*
+     * A system property named after the setting with a "labs.pm." prefix, such as
+     * -Dlabs.pm.data.folder, overrides the value from config.properties.
+     */
+    private String setting(String key){
+        return System.getProperty("labs.pm." + key, config.getString(key));
     }
 
     public static ProductManager getInstance(){
-        return new ProductManager();
+        return Holder.productManager;
     }
 
     public static Set<String> getSupportedLocales(){
@@ -84,216 +169,577 @@ public class ProductManager {
         return formatters.getOrDefault(languageTag, formatters.get("en-GB"));
     }
 
-    private static class ResourceFormatter{
-
-        private final ResourceBundle resource;
-        private final DateTimeFormatter dateFormat;
-        private final NumberFormat moneyFormat;
-
-        public ResourceFormatter(Locale locale){
-            resource = ResourceBundle.getBundle("labs.pm.data.resources", locale);
-            dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
-            moneyFormat = NumberFormat.getCurrencyInstance(locale);
-        }
-
-        private String formatProduct(Product product){
-
-            String type = switch (product){
-                case Food food -> getText("food");
-                case Drink drink -> getText("drink");
-            };
-
-            return MessageFormat.format(getText("product"), product.getName(), moneyFormat.format(product.getPrice()),
-                    product.getRating().getStars(), dateFormat.format(product.getBestBefore()),type);
-        }
-
-        private String formatReview(Review review){
-
-            return MessageFormat.format(getText("review"),
-                    review.rating().getStars(), review.comments());
-        }
-
-        private String getText(String key){
-            return resource.getString(key);
-        }
+    private Product parseProduct(String text){
+        return parseProduct(text, 0, text.length());
     }
 
-    private Product parseProduct(String text){
+    private Product parseProduct(CharSequence text, int start, int end){
 
         Product product = null;
 
         try {
-
-            Object[] values = productFormat.parse(text);
-            int id = Integer.parseInt((String) values[1]);
-            String name = (String) values[2];
-            BigDecimal price = BigDecimal.valueOf(Double.parseDouble((String) values[3]));
-            Rating rating = Rateable.convert(Integer.parseInt((String) values[4]));
-            switch ((String) values[0]){
-                case "D":
-                    product = new Drink(id, name, price, rating);
-                    break;
-                case "F":
-                    LocalDate bestBefore = LocalDate.parse((String)values[5]);
-                    product = new Food(id, name, price, rating, bestBefore);
-            }
-
-        } catch (ParseException | NumberFormatException | DateTimeParseException e) {
-            logger.log(Level.WARNING, "Error parsing product " + text, e);
+            product = RecordParser.parseProduct(text, start, end);
+        } catch (ParseException | NumberFormatException | DateTimeException e) {
+            logger.log(Level.WARNING, "Error parsing product " + text.subSequence(start, end), e);
         }
 
         return product;
 
     }
 
-    private Review parseReview(String text){
+    private Review parseReview(CharSequence text, int start, int end){
 
         Review review = null;
 
         try {
-            Object[] values = reviewFormat.parse(text);
-            review = new Review( Rateable.convert(Integer.parseInt((String) values[0])),
-                                (String)values[1] );
+            review = RecordParser.parseReview(text, start, end);
         } catch (ParseException | NumberFormatException e) {
-            logger.log(Level.WARNING, "Error parsing review " + text, e);
+            logger.log(Level.WARNING, "Error parsing review " + text.subSequence(start, end), e);
         }
 
         return review;
     }
 
-    private Product loadProduct(Path file){
+    private Product loadProduct(Path file, Queue<LoadFailure> failures){
         Product product = null;
 
-        try {
-            product = parseProduct(
-                    Files.lines(dataFolder.resolve(file), Charset.forName("UTF-8")).findFirst().orElseThrow());
+        try (Stream<String> lines = Files.lines(dataFolder.resolve(file), Charset.forName("UTF-8"))) {
+            product = parseProduct(lines.findFirst().orElseThrow());
+            if (product == null) {
+                failures.add(new LoadFailure(file, "unparsable product"));
+            }
         } catch (Exception e){
             logger.log(Level.WARNING, "Error loading product " + e.getMessage());
+            failures.add(new LoadFailure(file, e.toString()));
         }
 
 
         return product;
     }
 
-    private List<Review> loadReviews(Product product) {
+    /*
+     * In lazy mode the reviews are parsed only to count their ratings, the entry
+     * keeps the location of the review file and pages the reviews in on demand.
+     */
+    private ProductEntry loadEntry(Product product, Queue<LoadFailure> failures) {
 
-        List<Review> reviews = null;
+        List<Review> reviews = new ArrayList<>();
 
         Path file = dataFolder.resolve(
                 MessageFormat.format(
-                        config.getString("review.data.file"), product.getId()
+                        setting("review.data.file"), product.getId()
                 )
         );
 
-        if ( Files.notExists(file)) {
+        if (Files.exists(file)) {
+
+            try {
+                byte[] bytes = Files.readAllBytes(file);
+                CharBuffer text = Charset.forName("UTF-8")
+                        .newDecoder()
+                        .decode(ByteBuffer.wrap(bytes));
+                int[] histogram = new int[Rating.values().length];
+                for (int start = 0, end; start < text.length(); start = end + 1) {
+                    end = RecordParser.lineEnd(text, start);
+                    Review review = parseReview(text, start,
+                            (end > start && text.charAt(end - 1) == '\r') ? end - 1 : end);
+                    if (review == null) {
+                        continue;
+                    }
+                    if (lazyReviews) {
+                        histogram[review.rating().ordinal()]++;
+                    } else {
+                        reviews.add(review);
+                    }
+                }
+                if (lazyReviews) {
+                    RatingSummary summary = RatingSummary.of(histogram);
+                    return new ProductEntry(product, summary, new ReviewLocation(
+                            file, ReviewLocation.Format.CSV, 0, bytes.length, summary.getCount()));
+                }
+            } catch (IOException e){
+                logger.log(Level.WARNING, "Error loading Reviews " + e.getMessage());
+                failures.add(new LoadFailure(file, e.toString()));
+            }
+
+        }
 
-            reviews = new ArrayList<>();
+        return new ProductEntry(product, reviews);
+    }
 
+    private record LoadFailure(Path file, String reason){}
+
+    /*
+     * The newest checkpoint in the data folder supersedes the per-product files,
+     * and the journal segments it does not cover are replayed on top of it. In the
+     * segment layout the segments are the checkpoint, unless a snapshot checkpoint
+     * covers more of the journal.
+     */
+    void loadAllData(){
+        long started = metrics.start();
+        boolean loaded = false;
+        try {
+            List<Path> checkpoints = snapshotFiles.list(dataFolder);
+            Path checkpoint = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+            long covered = (checkpoint == null) ? -1 : snapshotFiles.numberOf(checkpoint);
+            long firstSegment = 0;
+            if (segmentLayout && segments.newestGeneration() > covered) {
+                loadSegments();
+                firstSegment = segments.getGeneration();
+            } else if (checkpoint != null) {
+                long start = System.nanoTime();
+                if (lazyReviews) {
+                    reindex(SnapshotFile.readEntries(checkpoint));
+                } else {
+                    reindex(SnapshotFile.read(checkpoint));
+                }
+                firstSegment = snapshotFiles.numberOf(checkpoint);
+                logger.log(Level.INFO, MessageFormat.format("Loaded {0} products from {1} in {2} ms",
+                        index.size(), checkpoint.getFileName(), (System.nanoTime() - start) / 1_000_000));
+            } else if (segmentLayout) {
+                importDataFiles();
+            } else {
+                loadDataFiles();
+            }
+            if (journalEnabled) {
+                replayJournal(firstSegment);
+                journal = new ReviewJournal(dataFolder, journalFiles, firstSegment,
+                        Long.parseLong(setting("journal.commit.window.ms")));
+            }
+            loaded = true;
+        } catch (Exception e){
+            logger.log(Level.WARNING, "Error Loading products" + e.getMessage(), e);
+        }
+        metrics.loadAllData.record(started, loaded);
+    }
+
+    private void loadSegments() throws IOException {
+        long start = System.nanoTime();
+        if (lazyReviews) {
+            reindex(segments.readEntries());
         } else {
+            reindex(segments.read());
+        }
+        logger.log(Level.INFO, MessageFormat.format("Loaded {0} products from {1} in {2} ms",
+                index.size(), segments.getProductsFile().getFileName(), (System.nanoTime() - start) / 1_000_000));
+    }
 
-            try {
-                reviews = Files
-                        .lines(file, Charset.forName("UTF-8"))
-                        .map( text -> parseReview(text))
-                        .filter( review -> review != null)
-                        .collect(Collectors.toList());
-            } catch (IOException e){
-                logger.log(Level.WARNING, "Error loading Reviews", e.getMessage());
+    /**
+     * Imports the per-product files of the data folder into catalog segments,
+     * then serves the catalog from the segments. The per-product files are left
+     * in place and are not read again once the segments exist.
+     */
+    private void importDataFiles() throws IOException {
+        loadDataFiles();
+        long start = System.nanoTime();
+        CatalogCopy copy = copyCatalog();
+        segments.write(0, copy.reviews(), (product, location) -> relocate(copy, product, location));
+        logger.log(Level.INFO, MessageFormat.format("Imported {0} products into {1} in {2} ms",
+                copy.reviews().size(), segments.getProductsFile().getFileName(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    private void replayJournal(long firstSegment) throws IOException {
+        long start = System.nanoTime();
+        int replayed = 0;
+        for (Path segment : journalFiles.list(dataFolder)) {
+            if (journalFiles.numberOf(segment) >= firstSegment) {
+                replayed += ReviewJournal.replay(segment, product -> {
+                    if (index.get(product.getId()) == null) {
+                        indexProduct(product);
+                    }
+                }, (review, id) -> {
+                    ProductEntry entry = index.get(id);
+                    if (entry == null) {
+                        logger.log(Level.WARNING, "Skipping journaled review of unknown product " + id);
+                    } else {
+                        applyReview(entry, review);
+                    }
+                });
             }
+        }
+        logger.log(Level.INFO, MessageFormat.format("Replayed {0} journal records in {1} ms",
+                replayed, (System.nanoTime() - start) / 1_000_000));
+    }
 
+    /**
+     * Folds the journal into a new checkpoint of the catalog.
+     * <p>
+     * Under every stripe lock the reviews are copied and the journal is rotated,
+     * so the copy holds exactly the reviews of the segments before the new one.
+     * The checkpoint is then written without blocking writers, and is named after
+     * the new segment so a restart replays only the segments it does not cover.
+     * Nothing is written when the catalog has not changed since the last checkpoint
+     * was written, so a failed compaction is retried at the next interval.
+     * </p>
+     * <p>
+     * In the segment layout the checkpoint is a new generation of the segments,
+     * and the journal is kept from the generation kept to fall back on.
+     * </p>
+     * <p>
+     * In lazy mode the stored reviews are streamed from their current locations
+     * one product at a time, and every entry is then moved to the checkpoint
+     * before the older checkpoints are deleted.
+     * </p>
+     */
+    void compactJournal(){
+        long started = metrics.start();
+        CatalogCopy copy;
+        CompletableFuture<Long> rotation;
+        long version;
+        try {
+            lockAll();
+            version = catalogVersion.get();
+            if (version == compactedVersion) {
+                return;
+            }
+            copy = copyCatalog();
+            rotation = journal.rotate();
+        } finally {
+            unlockAll();
         }
 
-        return reviews;
+        try {
+            long start = System.nanoTime();
+            long segment = rotation.join();
+            Path checkpoint;
+            if (segmentLayout) {
+                segments.write(segment, copy.reviews(), (product, location) -> relocate(copy, product, location));
+                checkpoint = segments.getProductsFile();
+            } else {
+                checkpoint = SnapshotFile.write(dataFolder, snapshotFiles.name(segment), copy.reviews(),
+                        (product, location) -> relocate(copy, product, location));
+            }
+            compactedVersion = version;
+            journal.deleteBefore(segmentLayout ? segments.oldestGeneration() : segment);
+            for (Path file : snapshotFiles.list(dataFolder)) {
+                if (!file.equals(checkpoint)) {
+                    Files.delete(file);
+                }
+            }
+            logger.log(Level.INFO, MessageFormat.format("Compacted review journal into {0} in {1} ms",
+                    checkpoint.getFileName(), (System.nanoTime() - start) / 1_000_000));
+            metrics.compactJournal.record(started, true);
+        } catch (IOException | CompletionException | IllegalStateException e){
+            logger.log(Level.SEVERE, "Error compacting review journal " + e.getMessage(), e);
+            metrics.compactJournal.record(started, false);
+        }
     }
 
-    private void loadAllData(){
+    /*
+     * The reviews of every entry at one catalog version, and what is needed to
+     * move lazily loaded entries to the file the copy is written to.
+     */
+    private record CatalogCopy(Map<Product, Collection<Review>> reviews,
+                               Map<Product, ProductEntry> entries, Map<Product, Integer> added){}
+
+    /*
+     * Must run with every stripe locked, or before the catalog is shared.
+     */
+    private CatalogCopy copyCatalog(){
+        CatalogCopy copy = new CatalogCopy(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        index.forEach(entry -> {
+            copy.reviews().put(entry.getProduct(), reviewStore.streamReviews(entry));
+            copy.entries().put(entry.getProduct(), entry);
+            copy.added().put(entry.getProduct(), entry.getReviews().size());
+        });
+        return copy;
+    }
+
+    private void relocate(CatalogCopy copy, Product product, ReviewLocation location){
+        if (!lazyReviews) {
+            return;
+        }
+        ProductEntry entry = copy.entries().get(product);
+        Lock lock = stripe(product.getId());
         try {
-            products = Files
-                    .list(dataFolder)
+            lock.lock();
+            if (index.get(product.getId()) == entry) {
+                entry.relocate(location, copy.added().get(product));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void loadDataFiles(){
+        long start = System.nanoTime();
+        Queue<LoadFailure> failures = new ConcurrentLinkedQueue<>();
+
+        NumberedFiles productFileNames = new NumberedFiles(setting("product.data.file"));
+        try (Stream<Path> files = Files.list(dataFolder)) {
+            List<Path> productFiles = files
                     .filter(
-                            file -> file.getFileName().toString().startsWith("product")
+                            file -> productFileNames.numberOf(file) >= 0
                     )
-                    .map(
-                            file -> loadProduct(file)
-                    )
-                    .filter( product -> product != null)
-                    .collect( Collectors.toMap(product -> product, product -> loadReviews(product)));
+                    .toList();
+            Map<Product, ProductEntry> products = parallelLoad ?
+                    loadParallel(productFiles, failures) : loadSequential(productFiles, failures);
+            reindex(products.values());
+
+            logger.log(Level.INFO, MessageFormat.format("Loaded {0} products from {1} files in {2} ms",
+                    products.size(), productFiles.size(), (System.nanoTime() - start) / 1_000_000));
+            if (!failures.isEmpty()) {
+                logger.log(Level.WARNING, failures.size() + " data files failed to load:\n" +
+                        failures.stream()
+                                .map(failure -> failure.file() + ": " + failure.reason())
+                                .collect(Collectors.joining("\n")));
+            }
         } catch (Exception e){
             logger.log(Level.WARNING, "Error Loading products" + e.getMessage(), e);
         }
 
     }
 
-    private void dumpData(){
+    private Map<Product, ProductEntry> loadSequential(List<Path> files, Queue<LoadFailure> failures){
+        Map<Product, ProductEntry> products = new HashMap<>();
+        files.forEach(file -> loadFile(file, products, failures));
+        return products;
+    }
+
+    /**
+     * Loads every product file on its own virtual thread, together with the
+     * matching review file. At most {@code data.load.concurrency} files are open
+     * at any time, and the call returns once every file has been loaded.
+     */
+    private Map<Product, ProductEntry> loadParallel(List<Path> files, Queue<LoadFailure> failures){
+        Map<Product, ProductEntry> products = new ConcurrentHashMap<>();
+        Semaphore openFiles = new Semaphore(loadConcurrency);
+        try (ExecutorService loaders = Executors.newVirtualThreadPerTaskExecutor()) {
+            files.forEach(file -> loaders.submit(() -> {
+                openFiles.acquireUninterruptibly();
+                try {
+                    loadFile(file, products, failures);
+                } finally {
+                    openFiles.release();
+                }
+            }));
+        }
+        return products;
+    }
+
+    private void loadFile(Path file, Map<Product, ProductEntry> products, Queue<LoadFailure> failures){
+        Product product = loadProduct(file, failures);
+        if (product != null && products.putIfAbsent(product, loadEntry(product, failures)) != null) {
+            failures.add(new LoadFailure(file, "duplicate product id " + product.getId()));
+        }
+    }
+
+    void dumpData(){
+        long started = metrics.start();
+        boolean dumped = false;
         try {
+            lockAll();
             if(Files.notExists(tempFolder)){
                 Files.createDirectory(tempFolder);
             }
-            Path tempFile = tempFolder.resolve(
-                    MessageFormat.format(config.getString("temp.file"), Instant.now().getNano()));
-
-            try (ObjectOutputStream out = new ObjectOutputStream(
-                    Files.newOutputStream(tempFile, StandardOpenOption.CREATE)
-            )){
-                out.writeObject(products);
-                products = new HashMap<>();
-            }
-        } catch (IOException e){
+            Map<Product, Collection<Review>> products = new HashMap<>();
+            index.forEach(entry -> products.put(entry.getProduct(), reviewStore.streamReviews(entry)));
+            SnapshotFile.write(tempFolder, nextSnapshotName(), products);
+            reindex(List.of());
+            dumped = true;
+        } catch (IOException | IllegalStateException e){
             logger.log(Level.SEVERE, "Error dumping data" + e.getMessage(), e);
+        } finally {
+            unlockAll();
         }
+        metrics.dumpData.record(started, dumped);
     }
 
-    @SuppressWarnings("unchecked")
-    private void restoreData(){
+    /*
+     * Dumps are numbered by epoch milliseconds so they sort in dump order, and
+     * bumped past any existing snapshot instead of relying on the clock being unique.
+     */
+    private String nextSnapshotName(){
+        long stamp = System.currentTimeMillis();
+        String name;
+        while (Files.exists(tempFolder.resolve(name = snapshotFiles.name(stamp)))) {
+            stamp++;
+        }
+        return name;
+    }
 
+    void restoreData(){
+
+        long started = metrics.start();
+        boolean restored = false;
         try {
-            Path tempFile = Files.list(tempFolder)
+            List<Path> snapshots = snapshotFiles.list(tempFolder);
+            if (snapshots.isEmpty()) {
+                restoreLegacyData();
+            } else {
+                Path snapshotFile = snapshots.get(snapshots.size() - 1);
+                reindex(SnapshotFile.read(snapshotFile));
+                Files.delete(snapshotFile);
+            }
+            restored = true;
+        } catch (Exception e){
+            logger.log(Level.WARNING, "Error restoring data" + e.getMessage(), e);
+        }
+        metrics.restoreData.record(started, restored);
+    }
+
+    /*
+     * Reads a catalog dumped with Java serialization before the binary snapshot format.
+     */
+    @SuppressWarnings("unchecked")
+    private void restoreLegacyData() throws IOException, ClassNotFoundException {
+        try (Stream<Path> files = Files.list(tempFolder)) {
+            Path tempFile = files
                     .filter( path -> path.getFileName().toString().endsWith("tmp"))
                     .findFirst().orElseThrow();
             try (ObjectInputStream in = new ObjectInputStream(
                     Files.newInputStream(tempFile, StandardOpenOption.DELETE_ON_CLOSE)
             )){
-                products = (HashMap) in.readObject();
+                reindex((HashMap<Product, List<Review>>) in.readObject());
             }
-
-        } catch (Exception e){
-            logger.log(Level.WARNING, "Error restoring data" + e.getMessage(), e);
         }
     }
 
-    private Product findProduct(int id) throws ProductManagerException{
+    private void reindex(Map<Product, List<Review>> products){
+        List<ProductEntry> entries = new ArrayList<>(products.size());
+        products.forEach((product, reviews) -> entries.add(new ProductEntry(product, reviews)));
+        reindex(entries);
+    }
+
+    /*
+     * Builds the new primary index aside, so lock-free readers see either the
+     * old catalog or the new one, never a partial one. It is swapped in under
+     * every stripe lock, so no review is being applied to an entry, or its
+     * discount and secondary index records, while they are replaced.
+     */
+    private void reindex(Collection<ProductEntry> entries){
+        ProductIndex next = new ProductIndex(entries.size());
+        entries.forEach(entry -> next.put(entry.getProduct().getId(), entry));
         try {
-            readLock.lock();
-            return products.keySet()
-                    .stream()
-                    .filter( p -> p.getId() == id )
-                    .findFirst()
-                    .orElseThrow( () -> new ProductManagerException("Product with id " + id + " not found"));
+            lockAll();
+            discountTotals.clear();
+            secondaryIndexes.clear();
+            next.forEach(entry -> {
+                discountTotals.add(entry.getProduct());
+                secondaryIndexes.add(entry);
+            });
+            index = next;
+            snapshot.set(CatalogSnapshot.of(catalogVersion.incrementAndGet(), next));
         } finally {
-            readLock.unlock();
+            unlockAll();
         }
+    }
 
+    private Lock stripe(int id){
+        return stripes[id & (LOCK_STRIPES - 1)];
+    }
 
+    private void lockAll(){
+        indexLock.lock();
+        for (Lock lock : stripes) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll(){
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+        indexLock.unlock();
+    }
+
+    /**
+     * Returns the snapshot of the current catalog version.
+     * <p>
+     * Writers publish the next snapshot with every write, so readers never
+     * iterate the live index. A snapshot never contains a partially applied
+     * review, because each entry publishes a complete product version.
+     * </p>
+     *
+     * @return an immutable snapshot of the catalog
+     */
+    private CatalogSnapshot snapshot(){
+        return snapshot.get();
+    }
+
+    /*
+     * Bumps the catalog version and publishes the snapshot holding the current
+     * revision of the entry. Must be called under the stripe lock of the entry,
+     * or the index lock for a new entry, once the revision is set, so the
+     * snapshot of each entry only moves forward. Writers of other stripes may
+     * race, the update is retried on the newer snapshot.
+     */
+    private void publish(ProductEntry entry){
+        long version = catalogVersion.incrementAndGet();
+        snapshot.updateAndGet(current -> current.with(version, entry));
+    }
+
+    private Product findProduct(int id) throws ProductManagerException{
+        return findEntry(id).getProduct();
+    }
+
+    private ProductEntry findEntry(int id) throws ProductManagerException{
+        long started = metrics.start();
+        ProductEntry entry = index.get(id);
+        metrics.findProduct.record(started, entry != null);
+        if (entry == null) {
+            throw new ProductManagerException("Product with id " + id + " not found");
+        }
+        return entry;
     }
 
     // Public Read Methods
 
     public Map<String, String> getDiscounts(String languageTag){
 
+        long started = metrics.start();
         ResourceFormatter formatter = changeLocal(languageTag);
+        LocalDateTime now = LocalDateTime.now();
+        DiscountTotals.Totals totals = discountTotals.get(now.toLocalDate(), Drink.isDiscountTime(now.toLocalTime()));
+
+        String tag = formatter.getLocale().toLanguageTag();
+        FormattedDiscounts formatted = formattedDiscounts.get(tag);
+        if (formatted == null || formatted.version() != totals.version()
+                || !formatted.day().equals(totals.day()) || formatted.drinkDiscount() != totals.drinkDiscount()) {
+            Map<String, String> discounts = new LinkedHashMap<>();
+            totals.discounts().forEach((rating, discount) ->
+                    discounts.put(rating.getStars(), formatter.formatMoney(discount)));
+            formatted = new FormattedDiscounts(totals.version(), totals.day(), totals.drinkDiscount(),
+                    Collections.unmodifiableMap(discounts));
+            formattedDiscounts.put(tag, formatted);
+        }
+        metrics.getDiscounts.record(started, true);
+        return formatted.discounts();
+    }
+
+    public RatingSummary getRatingSummary(int id){
+
+        try {
+            return findEntry(id).getSummary();
+        } catch (ProductManagerException e) {
+            logger.log(Level.INFO, e.getMessage());
+            return null;
+        }
+
+    }
+
+    /**
+     * Returns the operation metrics of this manager, also registered as an MXBean.
+     */
+    public ProductManagerMetricsMXBean getMetrics(){
+        return metrics;
+    }
 
-        return products.keySet()
-                .stream()
-                .collect(
-                        Collectors.groupingBy(
-                                product -> product.getRating().getStars(),
-                                Collectors.collectingAndThen(
-                                        Collectors.summingDouble(
-                                                product -> product.getDiscount().doubleValue()
-                                        ), discount -> formatter.moneyFormat.format(discount)
-                                )
-                        )
-                );
+    /**
+     * Returns the operation metrics of this manager as a plain-text table.
+     */
+    public String printMetrics(){
+        return metrics.dump();
+    }
+
+    private int catalogSize(){
+        return index.size();
+    }
+
+    private long reviewCount(){
+        LongAdder reviews = new LongAdder();
+        index.forEach(entry -> reviews.add(entry.getSummary().getCount()));
+        return reviews.sum();
     }
 
     public StringBuilder printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag){
@@ -301,143 +747,568 @@ public class ProductManager {
         StringBuilder txt = new StringBuilder();
 
         try {
-            readLock.lock();
-            ResourceFormatter formatter = changeLocal(languageTag);
-            products.keySet()
-                    .stream()
-                    .sorted(sorter)
-                    .filter(filter)
-                    .forEach( p ->  txt.append(formatter.formatProduct(p) + '\n'));
+            printProducts(filter, sorter, languageTag, 0, Integer.MAX_VALUE, txt);
         } catch (Exception e){
             logger.log(Level.WARNING, "Error printing product" + e.getMessage(), e);
         }
-        finally {
-            readLock.unlock();
-        }
 
         return txt;
 
     }
 
-    public void printProductReport(int id, String languageTag, String client){
+    /**
+     * Writes one page of the product listing to {@code out}, one line per product.
+     * <p>
+     * Products are filtered before they are sorted, and only the products up to
+     * the end of the page are kept in order, so a short page of a large catalog
+     * costs one pass over the catalog. Without a {@code sorter} products are
+     * listed in catalog order and each line is written as soon as it is matched.
+     * Products that compare equal are listed by id, so pages of the same listing
+     * line up.
+     * </p>
+     * <p>
+     * A {@link ProductQuery} filter only scans the products of its most selective
+     * indexed criterion, at their current version. Any other filter scans the
+     * catalog snapshot.
+     * </p>
+     *
+     * @param sorter the listing order, or {@code null} for catalog order
+     * @param offset the number of matching products to skip
+     * @param limit the maximum number of products to write
+     * @return the number of products written
+     * @throws IOException if {@code out} fails
+     */
+    public int printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag,
+                             int offset, int limit, Writer out) throws IOException {
+        return printProducts(filter, sorter, languageTag, offset, limit, (Appendable) out);
+    }
 
+    private int printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag,
+                              int offset, int limit, Appendable out) throws IOException {
+
+        long started = metrics.start();
+        boolean printed = false;
         try {
-            readLock.lock();
-            printProductReport(findProduct(id), languageTag, client);
-        } catch (ProductManagerException e) {
-            logger.log(Level.INFO, e.getMessage());
-        } catch (IOException e){
-            logger.log(Level.SEVERE, "Error printing report"+ e.getMessage(), e);
+            int written = writeProducts(filter, sorter, languageTag, offset, limit, out);
+            printed = true;
+            return written;
         } finally {
-            readLock.unlock();
+            metrics.printProducts.record(started, printed);
+        }
+    }
+
+    private int writeProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag,
+                              int offset, int limit, Appendable out) throws IOException {
+
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Invalid page offset " + offset + " limit " + limit);
+        }
+        ResourceFormatter formatter = changeLocal(languageTag);
+        List<ProductEntry.Revision> products = candidates(filter);
+        int written = 0;
+
+        if (sorter == null) {
+            int skipped = 0;
+            for (ProductEntry.Revision revision : products) {
+                if (written == limit) {
+                    break;
+                }
+                if (filter.test(revision.product()) && skipped++ >= offset) {
+                    out.append(productLine(revision, formatter)).append('\n');
+                    written++;
+                }
+            }
+        } else {
+            for (ProductEntry.Revision revision :
+                    ProductListing.select(products, products.size(), filter, sorter, offset, limit)) {
+                out.append(productLine(revision, formatter)).append('\n');
+                written++;
+            }
+        }
+
+        return written;
+    }
+
+    /**
+     * Returns one page of the products that match {@code query}, in {@code sorter} order.
+     *
+     * @param sorter the order of the products, or {@code null} for catalog order
+     * @param offset the number of matching products to skip
+     * @param limit the maximum number of products to return
+     */
+    public List<Product> findProducts(ProductQuery query, Comparator<Product> sorter, int offset, int limit){
+
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Invalid page offset " + offset + " limit " + limit);
         }
+        List<ProductEntry.Revision> products = candidates(query);
+        Stream<ProductEntry.Revision> page = (sorter == null) ?
+                products.stream().filter(revision -> query.test(revision.product())).skip(offset).limit(limit) :
+                ProductListing.select(products, products.size(), query, sorter, offset, limit).stream();
+
+        return page.map(ProductEntry.Revision::product).toList();
+    }
 
+    /*
+     * Narrows a query to the entries of its most selective secondary index,
+     * every other filter gets the whole catalog snapshot.
+     */
+    private List<ProductEntry.Revision> candidates(Predicate<Product> filter){
+        if (filter instanceof ProductQuery query) {
+            Collection<ProductEntry> entries = secondaryIndexes.candidates(query, LocalDate.now());
+            if (entries != null) {
+                List<ProductEntry.Revision> products = new ArrayList<>(entries.size());
+                entries.forEach(entry -> products.add(entry.getRevision()));
+                return products;
+            }
+        }
+        return snapshot().products();
     }
 
-    private void printProductReport(Product product, String languageTag, String client) throws IOException {
+    public void printProductReport(int id, String languageTag, String client){
 
+        try {
+            printProductReportAsync(id, languageTag, client).join();
+        } catch (CompletionException e) {
+            logger.log(Level.SEVERE, "Error printing report" + e.getMessage(), e);
+        }
+
+    }
+
+    /**
+     * Queues the report of a product to be written by the report writer.
+     * <p>
+     * Only capturing the product version and a snapshot of its reviews happens
+     * under the stripe lock of the product. Stored reviews are paged in after the
+     * lock is released, rendering and writing happen on a writer thread, and the
+     * report file is replaced as a whole.
+     * </p>
+     * <p>
+     * With {@code reports.store.enabled} each product version is rendered once per
+     * locale into the {@link ReportStore}, and the report file of every client is
+     * a link to it. A relative {@code reports.store.folder} is resolved against
+     * the reports folder.
+     * </p>
+     *
+     * @return a future completed with the report file once it is written, or with
+     * {@code null} if the product does not exist
+     */
+    public CompletableFuture<Path> printProductReportAsync(int id, String languageTag, String client){
+
+        long started = metrics.start();
         ResourceFormatter formatter = changeLocal(languageTag);
-        List<Review> reviews = products.get(product);
-        Collections.sort(reviews);
+        ReportSource source;
+        try {
+            source = reportSource(findEntry(id), formatter.getLocale().toLanguageTag());
+        } catch (ProductManagerException e) {
+            logger.log(Level.INFO, e.getMessage());
+            metrics.printProductReport.record(started, false);
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            metrics.printProductReport.record(started, false);
+            return CompletableFuture.failedFuture(e);
+        }
 
+        ProductEntry.Revision revision = source.revision();
         Path productFile = reportFolder.resolve(
-                MessageFormat.format(config.getString("report.file"), product.getId(), client)
+                MessageFormat.format(setting("report.file"), id, client)
         );
+        ReportWriter.Report report = out -> {
+            out.append(productLine(revision, formatter)).append(System.lineSeparator());
+            out.append((source.lines() != null) ? source.lines() : reviewLines(revision, source.reviews(), formatter));
+        };
+        CompletableFuture<Path> written = (reportStore != null) ?
+                reportStore.publish(productFile, id, revision.version(), formatter.getLocale().toLanguageTag(), report) :
+                reportWriter.submit(productFile, revision.version(), report);
+        return written.whenComplete((file, failure) -> metrics.printProductReport.record(started, file != null));
 
-        try (PrintWriter out = new PrintWriter(
-                new OutputStreamWriter(
-                        Files.newOutputStream(
-                                productFile, StandardOpenOption.CREATE),"UTF-8"
-                ))) {
+    }
 
-            out.append(formatter.formatProduct(product)+System.lineSeparator());
+    /*
+     * What a report is rendered from: a product revision with either the cached
+     * lines of its reviews or a copy of its reviews taken with that revision.
+     */
+    private record ReportSource(ProductEntry.Revision revision, String lines, List<Review> reviews){}
+
+    /*
+     * The revision and a snapshot of the reviews are taken under the stripe lock,
+     * and the stored reviews are paged in after it is released, so a slow read
+     * never blocks the writers of the stripe. A compaction may move the reviews
+     * and delete their old file in between, the snapshot is then taken again.
+     *
+     * @param languageTag the locale of the cached review lines to use, or null to read the reviews
+     */
+    private ReportSource reportSource(ProductEntry entry, String languageTag) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            ProductEntry.Revision revision;
+            ReviewStore.Snapshot snapshot;
+            Lock lock = stripe(entry.getProduct().getId());
+            try {
+                lock.lock();
+                revision = entry.getRevision();
+                String lines = (languageTag == null) ? null :
+                        lineCache.get(LineCache.Key.reviews(revision, languageTag));
+                if (lines != null) {
+                    return new ReportSource(revision, lines, null);
+                }
+                snapshot = reviewStore.snapshot(entry);
+            } finally {
+                lock.unlock();
+            }
+            try {
+                return new ReportSource(revision, null, reviewStore.getReviews(snapshot));
+            } catch (NoSuchFileException e) {
+                if (attempt == RELOCATION_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
 
-            if (reviews.isEmpty()) {
-                out.append(formatter.getText("no.reviews")+System.lineSeparator());
+    /*
+     * Every review adds a product version, so the rendered reviews of a version
+     * stay valid as long as the version is current. The reviews must be a copy
+     * taken with that version, they are sorted in place.
+     */
+    private String reviewLines(ProductEntry.Revision revision, List<Review> reviews, ResourceFormatter formatter){
 
+        Collections.sort(reviews);
+        String lines = appendReviews(reviews, formatter, new StringBuilder()).toString();
+        lineCache.put(LineCache.Key.reviews(revision, formatter.getLocale().toLanguageTag()), lines);
+        return lines;
+    }
 
-            } else {
+    private StringBuilder appendReviews(List<Review> sortedReviews, ResourceFormatter formatter, StringBuilder txt){
+        if (sortedReviews.isEmpty()) {
+            txt.append(formatter.getText("no.reviews")).append(System.lineSeparator());
+        } else {
+            for (Review review : sortedReviews) {
+                formatter.formatReview(review, txt).append(System.lineSeparator());
+            }
+        }
+        return txt;
+    }
 
-                out.append(reviews.stream()
-                        .map(r -> formatter.formatReview(r)+System.lineSeparator())
-                        .collect(Collectors.joining())
-                );
+    /**
+     * Exports the report of every product, in each of {@code languageTags}, into one
+     * gzip compressed tar archive written to {@code out}.
+     * <p>
+     * Products are rendered and compressed in parallel, {@code export.parallelism}
+     * threads at a time, and written in catalog order in constant memory. Each
+     * report is taken under the stripe lock of its product like any other report,
+     * so it is consistent for its product, while the catalog may change during
+     * the export. Exported lines are not cached, an export would evict the lines
+     * that listings and reports keep reusing.
+     * </p>
+     *
+     * @param progress called on this thread as products are exported
+     * @return the number of reports written
+     * @throws IOException if a report cannot be read or {@code out} fails
+     */
+    public long exportReports(Set<String> languageTags, OutputStream out, Consumer<ExportProgress> progress)
+            throws IOException {
+
+        long started = metrics.start();
+        boolean exported = false;
+        try {
+            List<ResourceFormatter> locales = languageTags.stream().map(this::changeLocal).distinct().toList();
+            List<ProductEntry> entries = new ArrayList<>(index.size());
+            index.forEach(entries::add);
+            int parallelism = Integer.parseInt(setting("export.parallelism"));
+            ReportExport export = new ReportExport(entries, setting("export.file"),
+                    (entry, sink) -> exportReports(entry, locales, sink),
+                    (parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors());
+            long reports = export.export(out, progress);
+            exported = true;
+            return reports;
+        } finally {
+            metrics.exportReports.record(started, exported);
+        }
+    }
 
-            }
+    /**
+     * Exports the report of every product, in each of {@code languageTags}, into
+     * the {@code archive} file, replacing it.
+     *
+     * @return the archive, or {@code null} if the export failed
+     * @see #exportReports(Set, OutputStream, Consumer)
+     */
+    public Path exportReports(Set<String> languageTags, Path archive, Consumer<ExportProgress> progress){
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(archive,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 1 << 16)) {
+            long reports = exportReports(languageTags, out, progress);
+            logger.log(Level.INFO, MessageFormat.format("Exported {0} reports to {1}", reports, archive));
+            return archive;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error exporting reports " + e.getMessage(), e);
+            return null;
         }
+    }
+
+    private void exportReports(ProductEntry entry, List<ResourceFormatter> locales, ReportExport.Sink sink)
+            throws IOException {
+
+        ReportSource source = reportSource(entry, null);
+        List<Review> reviews = source.reviews();
+        Collections.sort(reviews);
+        Product product = source.revision().product();
+        for (ResourceFormatter formatter : locales) {
+            StringBuilder txt = sink.text();
+            formatter.formatProduct(product, txt).append(System.lineSeparator());
+            appendReviews(reviews, formatter, txt);
+            sink.add(product.getId(), formatter.getLocale().toLanguageTag(), txt);
+        }
+    }
 
+    private String productLine(ProductEntry.Revision revision, ResourceFormatter formatter){
+        LineCache.Key key = LineCache.Key.product(revision, formatter.getLocale().toLanguageTag());
+        String line = lineCache.get(key);
+        if (line == null) {
+            line = formatter.formatProduct(revision.product());
+            lineCache.put(key, line);
+        }
+        return line;
     }
 
     // Public Write methods
 
     public Product reviewProduct(int id, Rating rating,String comment){
 
+        long started = metrics.start();
+        Product product;
         try {
-            writeLock.lock();
-            return  reviewProduct(findProduct(id), rating, comment);
+            product = review(id, rating, comment).join();
+        } catch (CompletionException e) {
+            logger.log(Level.SEVERE, "Error reviewing product " + e.getMessage(), e);
+            product = null;
+        }
+        metrics.reviewProduct.record(started, product != null);
+        return product;
+
+    }
+
+    /**
+     * Reviews a product and returns a future of the outcome.
+     * <p>
+     * With {@code reviews.combining} the review is queued with the concurrent
+     * reviews of its stripe, and whichever caller claims the stripe applies them
+     * all, rating each product once. Otherwise the review is applied by the
+     * calling thread. Either way the future completes once the review is
+     * journaled.
+     * </p>
+     *
+     * @return a future completed with the product rated with the review, or with
+     * {@code null} if the product does not exist or the review has no rating or comment.
+     * It completes exceptionally if the review could not be journaled.
+     */
+    public CompletableFuture<Product> reviewProductAsync(int id, Rating rating, String comment){
+
+        long started = metrics.start();
+        return review(id, rating, comment)
+                .whenComplete((product, failure) -> metrics.reviewProduct.record(started, product != null));
+
+    }
+
+    /*
+     * Reviews without a rating or comment are rejected before anything is applied,
+     * they could not be stored, summarized or journaled.
+     */
+    private CompletableFuture<Product> review(int id, Rating rating, String comment){
+        if (rating == null || comment == null) {
+            logger.log(Level.INFO, "Rejecting review of product " + id + " without rating or comment");
+            return CompletableFuture.completedFuture(null);
+        }
+        Review review = new Review(rating, comment);
+        return (combiner != null) ? combiner.submit(id, review) : reviewProduct(id, List.of(review));
+    }
+
+    /**
+     * Applies a batch of reviews and returns the outcome of each, in batch order.
+     * <p>
+     * The batch is grouped by product. Each product is locked once, gets all of
+     * its reviews in batch order and is rated once, and its reviews are queued
+     * to the journal as one record group. The wait for the group commit happens
+     * once the whole batch is applied.
+     * </p>
+     *
+     * @param reviews the reviews to apply
+     * @return for each review, the product rated with every review of the batch for
+     * that product, or {@code null} if the product does not exist, the review has
+     * no rating or comment, or it could not be journaled
+     */
+    public List<Product> reviewProducts(List<ProductReview> reviews){
+
+        long started = metrics.start();
+        ProductReview[] batch = reviews.toArray(ProductReview[]::new);
+        long[] order = new long[batch.length];
+        for (int i = 0; i < batch.length; i++) {
+            order[i] = ((long) batch[i].productId() << Integer.SIZE) | i;
+        }
+        Arrays.sort(order);
+
+        List<CompletableFuture<Product>> groups = new ArrayList<>();
+        int[] groupOf = new int[batch.length];
+        for (int start = 0, end; start < order.length; start = end) {
+            int id = (int) (order[start] >> Integer.SIZE);
+            end = start + 1;
+            while (end < order.length && (int) (order[end] >> Integer.SIZE) == id) {
+                end++;
+            }
+            List<Review> group = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                ProductReview review = batch[(int) order[i]];
+                if (review.rating() != null && review.comment() != null) {
+                    group.add(new Review(review.rating(), review.comment()));
+                    groupOf[(int) order[i]] = groups.size();
+                } else {
+                    logger.log(Level.INFO, "Skipping review of product " + id + " without rating or comment");
+                    groupOf[(int) order[i]] = -1;
+                }
+            }
+            groups.add(group.isEmpty() ? CompletableFuture.completedFuture(null) : reviewProduct(id, group));
+        }
+
+        Product[] outcomes = new Product[batch.length];
+        boolean applied = true;
+        for (int i = 0; i < batch.length; i++) {
+            try {
+                outcomes[i] = (groupOf[i] < 0) ? null : groups.get(groupOf[i]).join();
+            } catch (CompletionException e) {
+                logger.log(Level.SEVERE, "Error reviewing product " + batch[i].productId() + " " + e.getMessage(), e);
+                outcomes[i] = null;
+            }
+            applied &= outcomes[i] != null;
+        }
+        metrics.reviewProducts.record(started, applied);
+        return Collections.unmodifiableList(Arrays.asList(outcomes));
+    }
+
+    /*
+     * Applies the reviews of one product under its stripe lock.
+     */
+    private CompletableFuture<Product> reviewProduct(int id, List<Review> reviews){
+
+        Lock lock = stripe(id);
+        try {
+            lock.lock();
+            return applyReviews(id, reviews);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Journal records are queued under the stripe lock, so the journal holds the
+     * reviews of a product in the order they were applied, and the wait for the
+     * group commit happens after the lock is released. The future fails if the
+     * reviews could not be journaled, they stay applied in memory and are kept by
+     * the next checkpoint. Must be called under the stripe lock of the product.
+     */
+    private CompletableFuture<Product> applyReviews(int id, List<Review> reviews){
+
+        Product product;
+        try {
+            ProductEntry entry = findEntry(id);
+            product = (reviews.size() == 1) ? applyReview(entry, reviews.get(0)) : applyReviews(entry, reviews);
         } catch (ProductManagerException e) {
             logger.log(Level.INFO, e.getMessage());
-            return null;
-        }finally {
-            writeLock.unlock();
+            return CompletableFuture.completedFuture(null);
         }
-
+        if (journal == null) {
+            return CompletableFuture.completedFuture(product);
+        }
+        return journal.append(id, reviews).thenApply(journaled -> product);
     }
 
-    private Product reviewProduct(Product product, Rating rating, String comment){
+    private Product applyReview(ProductEntry entry, Review review){
+        return rate(entry, entry.addReview(review));
+    }
 
-        List<Review> reviews = products.get(product);
-        products.remove(product);
-        reviews.add(new Review(rating, comment));
+    private Product applyReviews(ProductEntry entry, List<Review> reviews){
+        return rate(entry, entry.addReviews(reviews));
+    }
 
-        product = product.applyRating(Rateable.
-                convert(
-                        (int) Math.round(
-                                reviews.stream()
-                                        .mapToInt(r -> r.rating().ordinal())
-                                        .average()
-                                        .orElse(0)
-                        )));
+    private Product rate(ProductEntry entry, RatingSummary summary){
 
-        products.put(product, reviews);
+        Product previous = entry.getProduct();
+        Product product = previous.applyRating(summary.getRating());
+        entry.setProduct(product);
+        discountTotals.replace(previous, product);
+        secondaryIndexes.rerate(entry, previous.getRating(), product.getRating());
+        publish(entry);
 
         return product;
     }
 
     public Product createProduct(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore){
 
+        long started = metrics.start();
         Product product = null;
         try {
-            writeLock.lock();
             product = new Food(id, name, price, rating, bestBefore);
-            products.putIfAbsent(product, new ArrayList<Review>());
+            addProduct(product).join();
         } catch (Exception e){
             logger.log(Level.INFO, "Error adding product " + e.getMessage());
+            metrics.createProduct.record(started, false);
             return null;
-        } finally {
-            writeLock.unlock();
         }
 
+        metrics.createProduct.record(started, true);
         return product;
     }
 
     public  Product createProduct(int id, String name, BigDecimal price, Rating rating){
 
+        long started = metrics.start();
         Product product = null;
 
         try{
-            writeLock.lock();;
             product = new Drink(id, name, price, rating);
-            products.putIfAbsent(product, new ArrayList<>());
+            addProduct(product).join();
         } catch (Exception e){
             logger.log(Level.WARNING, "Error adding product " + e.getMessage());
+            metrics.createProduct.record(started, false);
             return null;
-        }  finally {
-            writeLock.unlock();
         }
 
+        metrics.createProduct.record(started, true);
         return product;
 
     }
 
+    /*
+     * The product is queued to the journal before it is indexed, so no review of
+     * it can be journaled ahead of it, and the wait for the group commit happens
+     * after the index lock is released. The future fails if the product could
+     * not be journaled, it stays in the catalog and is kept by the next checkpoint.
+     */
+    private CompletableFuture<Void> addProduct(Product product){
+        CompletableFuture<Void> journaled = CompletableFuture.completedFuture(null);
+        try {
+            indexLock.lock();
+            if (index.get(product.getId()) == null) {
+                if (journal != null) {
+                    journaled = journal.append(product);
+                }
+                indexProduct(product);
+            }
+        } finally {
+            indexLock.unlock();
+        }
+        return journaled;
+    }
+
+    /*
+     * Must be called under the index lock, or before the catalog is shared.
+     */
+    private void indexProduct(Product product){
+        ProductEntry entry = new ProductEntry(product, new ArrayList<>());
+        entry.setSlot(snapshot.get().size());
+        index.put(product.getId(), entry);
+        discountTotals.add(product);
+        secondaryIndexes.add(entry);
+        publish(entry);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * {@code ProductManagerMetrics} times the operations of a {@link ProductManager},
+ * its locks and its loads and dumps, and reports the size of its catalog and
+ * how often rendered lines are found in its line cache.
+ * <br>
+ * An operation is timed from {@link #start()} to {@link Timer#record(long, boolean)}.
+ * Timers keep striped counters and histograms, so timing an operation takes two
+ * clock reads and a few uncontended atomic increments. When metrics are
+ * disabled nothing is recorded and the locks are plain {@link ReentrantLock}s.
+ * @author AymanElMikh
+ **/
+public final class ProductManagerMetrics implements ProductManagerMetricsMXBean {
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+    private static final Logger logger = Logger.getLogger(ProductManagerMetrics.class.getName());
+
+    /**
+     * Counts and times one kind of operation, and counts its failures.
+     */
+    final class Timer {
+
+        private final String name;
+        private final StripedHistogram durations = new StripedHistogram();
+        private final LongAdder failures = new LongAdder();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Records an operation that started at {@code start}, as returned by {@link #start()}.
+         */
+        void record(long start, boolean succeeded) {
+            if (enabled) {
+                durations.record(System.nanoTime() - start);
+                if (!succeeded) {
+                    failures.increment();
+                }
+            }
+        }
+
+        void recordNanos(long nanos) {
+            if (enabled) {
+                durations.record(nanos);
+            }
+        }
+    }
+
+    private final boolean enabled;
+    private final IntSupplier catalogSize;
+    private final LongSupplier reviewCount;
+    private final LongSupplier lineCacheHits;
+    private final LongSupplier lineCacheMisses;
+
+    final Timer reviewProduct = new Timer("reviewProduct");
+    final Timer reviewProducts = new Timer("reviewProducts");
+    final Timer createProduct = new Timer("createProduct");
+    final Timer findProduct = new Timer("findProduct");
+    final Timer getDiscounts = new Timer("getDiscounts");
+    final Timer printProducts = new Timer("printProducts");
+    final Timer printProductReport = new Timer("printProductReport");
+    final Timer loadAllData = new Timer("loadAllData");
+    final Timer dumpData = new Timer("dumpData");
+    final Timer restoreData = new Timer("restoreData");
+    final Timer compactJournal = new Timer("compactJournal");
+    final Timer exportReports = new Timer("exportReports");
+    final Timer stripeLockWait = new Timer("stripeLock.wait");
+    final Timer stripeLockHold = new Timer("stripeLock.hold");
+    final Timer indexLockWait = new Timer("indexLock.wait");
+    final Timer indexLockHold = new Timer("indexLock.hold");
+
+    private final List<Timer> timers = List.of(reviewProduct, reviewProducts, createProduct, findProduct, getDiscounts,
+            printProducts, printProductReport, loadAllData, dumpData, restoreData, compactJournal, exportReports,
+            stripeLockWait, stripeLockHold, indexLockWait, indexLockHold);
+
+    ProductManagerMetrics(boolean enabled, IntSupplier catalogSize, LongSupplier reviewCount,
+                          LongSupplier lineCacheHits, LongSupplier lineCacheMisses) {
+        this.enabled = enabled;
+        this.catalogSize = catalogSize;
+        this.reviewCount = reviewCount;
+        this.lineCacheHits = lineCacheHits;
+        this.lineCacheMisses = lineCacheMisses;
+    }
+
+    /**
+     * Returns the start time of an operation, to be passed to {@link Timer#record(long, boolean)}.
+     */
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Returns a lock timed by {@code wait} and {@code hold} when metrics are enabled.
+     */
+    Lock newLock(Timer wait, Timer hold) {
+        return enabled ? new TimedLock(wait, hold) : new ReentrantLock();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, when they are enabled.
+     */
+    void register() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(this, new ObjectName("labs.pm:type=ProductManager"));
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Error registering metrics " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int getCatalogSize() {
+        return catalogSize.getAsInt();
+    }
+
+    @Override
+    public long getReviewCount() {
+        return reviewCount.getAsLong();
+    }
+
+    @Override
+    public long getLineCacheHits() {
+        return lineCacheHits.getAsLong();
+    }
+
+    @Override
+    public long getLineCacheMisses() {
+        return lineCacheMisses.getAsLong();
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        timers.forEach(timer -> counts.put(timer.name, timer.durations.snapshot().count()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getFailures() {
+        Map<String, Long> failures = new LinkedHashMap<>();
+        timers.forEach(timer -> failures.put(timer.name, timer.failures.sum()));
+        return failures;
+    }
+
+    @Override
+    public Map<String, Double> getDurationsMicros() {
+        Map<String, Double> durations = new LinkedHashMap<>();
+        for (Timer timer : timers) {
+            StripedHistogram.Snapshot snapshot = timer.durations.snapshot();
+            durations.put(timer.name + ".mean", snapshot.mean() / 1e3);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                durations.put(timer.name + "." + PERCENTILE_NAMES[i], snapshot.valueAt(PERCENTILES[i]) / 1e3);
+            }
+            durations.put(timer.name + ".max", snapshot.max() / 1e3);
+        }
+        return durations;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder txt = new StringBuilder();
+        txt.append(String.format(Locale.ROOT, "catalog %d products, %d reviews, metrics %s%n",
+                getCatalogSize(), getReviewCount(), enabled ? "enabled" : "disabled"));
+        txt.append(String.format(Locale.ROOT, "line cache %d hits, %d misses%n",
+                getLineCacheHits(), getLineCacheMisses()));
+        txt.append(String.format(Locale.ROOT, "%-20s %10s %8s %10s %10s %10s %10s %10s%n",
+                "timer", "count", "failed", "mean us", "p50 us", "p99 us", "p999 us", "max us"));
+        for (Timer timer : timers) {
+            StripedHistogram.Snapshot snapshot = timer.durations.snapshot();
+            txt.append(String.format(Locale.ROOT, "%-20s %10d %8d %10.1f", timer.name, snapshot.count(),
+                    timer.failures.sum(), snapshot.mean() / 1e3));
+            for (double percentile : PERCENTILES) {
+                txt.append(String.format(Locale.ROOT, " %10.1f", snapshot.valueAt(percentile) / 1e3));
+            }
+            txt.append(String.format(Locale.ROOT, " %10.1f%n", snapshot.max() / 1e3));
+        }
+        return txt.toString();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.util.Map;
+
+/**
+ * {@code ProductManagerMetricsMXBean} exposes the operation metrics of the
+ * {@link ProductManager} over JMX, as {@code labs.pm:type=ProductManager}.
+ * <br>
+ * Durations are in microseconds and keyed by timer name and statistic, such as
+ * {@code reviewProduct.p99} or {@code stripeLock.wait.max}.
+ * @author AymanElMikh
+ **/
+public interface ProductManagerMetricsMXBean {
+
+    int getCatalogSize();
+
+    long getReviewCount();
+
+    long getLineCacheHits();
+
+    long getLineCacheMisses();
+
+    Map<String, Long> getCounts();
+
+    Map<String, Long> getFailures();
+
+    Map<String, Double> getDurationsMicros();
+
+    /**
+     * Returns every metric as a plain-text table.
+     */
+    String dump();
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.function.Predicate;
+
+/**
+ * {@code ProductQuery} describes a structured product search: a rating range,
+ * a product type, a best before range and a price range, each bound inclusive
+ * and each criterion optional.
+ * <br>
+ * Queries are immutable, every method returns a new query narrowed by one
+ * criterion. Unlike an arbitrary {@link Predicate}, a query can be answered
+ * from the secondary indexes of the catalog.
+ * @author AymanElMikh
+ **/
+public final class ProductQuery implements Predicate<Product> {
+
+    private static final ProductQuery ALL = new ProductQuery(null, null, null, null, null, null, null);
+
+    private final Rating minRating;
+    private final Rating maxRating;
+    private final Class<? extends Product> type;
+    private final LocalDate bestBeforeFrom;
+    private final LocalDate bestBeforeTo;
+    private final BigDecimal minPrice;
+    private final BigDecimal maxPrice;
+
+    private ProductQuery(Rating minRating, Rating maxRating, Class<? extends Product> type,
+                         LocalDate bestBeforeFrom, LocalDate bestBeforeTo, BigDecimal minPrice, BigDecimal maxPrice) {
+        this.minRating = minRating;
+        this.maxRating = maxRating;
+        this.type = type;
+        this.bestBeforeFrom = bestBeforeFrom;
+        this.bestBeforeTo = bestBeforeTo;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+    }
+
+    /**
+     * Returns the query that matches every product.
+     */
+    public static ProductQuery all() {
+        return ALL;
+    }
+
+    /**
+     * @param min the lowest rating, or {@code null} for no lower bound
+     * @param max the highest rating, or {@code null} for no upper bound
+     */
+    public ProductQuery rating(Rating min, Rating max) {
+        return new ProductQuery(min, max, type, bestBeforeFrom, bestBeforeTo, minPrice, maxPrice);
+    }
+
+    /**
+     * @param type {@code Food.class}, {@code Drink.class}, or {@code null} for any type
+     */
+    public ProductQuery type(Class<? extends Product> type) {
+        return new ProductQuery(minRating, maxRating, type, bestBeforeFrom, bestBeforeTo, minPrice, maxPrice);
+    }
+
+    /**
+     * @param from the earliest best before date, or {@code null} for no lower bound
+     * @param to the latest best before date, or {@code null} for no upper bound
+     */
+    public ProductQuery bestBefore(LocalDate from, LocalDate to) {
+        return new ProductQuery(minRating, maxRating, type, from, to, minPrice, maxPrice);
+    }
+
+    /**
+     * @param min the lowest price, or {@code null} for no lower bound
+     * @param max the highest price, or {@code null} for no upper bound
+     */
+    public ProductQuery price(BigDecimal min, BigDecimal max) {
+        return new ProductQuery(minRating, maxRating, type, bestBeforeFrom, bestBeforeTo, min, max);
+    }
+
+    Rating getMinRating() {
+        return (minRating == null) ? Rating.NOT_RATED : minRating;
+    }
+
+    Rating getMaxRating() {
+        return (maxRating == null) ? Rating.FIVE_STAR : maxRating;
+    }
+
+    Class<? extends Product> getType() {
+        return type;
+    }
+
+    LocalDate getBestBeforeFrom() {
+        return bestBeforeFrom;
+    }
+
+    LocalDate getBestBeforeTo() {
+        return bestBeforeTo;
+    }
+
+    boolean isBestBeforeBounded() {
+        return bestBeforeFrom != null || bestBeforeTo != null;
+    }
+
+    /**
+     * Tells whether {@code date} is within the best before range of the query.
+     */
+    boolean isBestBefore(LocalDate date) {
+        return (bestBeforeFrom == null || !date.isBefore(bestBeforeFrom))
+                && (bestBeforeTo == null || !date.isAfter(bestBeforeTo));
+    }
+
+    @Override
+    public boolean test(Product product) {
+        Rating rating = product.getRating();
+        return rating.compareTo(getMinRating()) >= 0 && rating.compareTo(getMaxRating()) <= 0
+                && (type == null || type.isInstance(product))
+                && (!isBestBeforeBounded() || isBestBefore(product.getBestBefore()))
+                && (minPrice == null || product.getPrice().compareTo(minPrice) >= 0)
+                && (maxPrice == null || product.getPrice().compareTo(maxPrice) <= 0);
+    }
+
+    @Override
+    public String toString() {
+        return "rating " + getMinRating() + ".." + getMaxRating()
+                + ", type " + ((type == null) ? "any" : type.getSimpleName())
+                + ", best before " + bestBeforeFrom + ".." + bestBeforeTo
+                + ", price " + minPrice + ".." + maxPrice;
+    }
+}
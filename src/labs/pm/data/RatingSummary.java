@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.util.Collection;
+
+/**
+ * {@code RatingSummary} is the running aggregate of the reviews of a product.
+ * <br>
+ * It keeps the review count, the sum of the review ratings and the number
+ * of reviews per {@link Rating}, so the average rating of a product is
+ * available without iterating over its reviews.
+ * <br>
+ * Instances are immutable, {@link #add(Rating)} and {@link #addAll(Collection)}
+ * return a new summary.
+ * @author AymanElMikh
+ **/
+public final class RatingSummary {
+
+    public static final RatingSummary EMPTY = new RatingSummary(0, 0, new int[Rating.values().length]);
+
+    private final int count;
+    private final long sum;
+    private final int[] histogram;
+
+    private RatingSummary(int count, long sum, int[] histogram) {
+        this.count = count;
+        this.sum = sum;
+        this.histogram = histogram;
+    }
+
+    public static RatingSummary of(Collection<Review> reviews) {
+        int[] histogram = new int[Rating.values().length];
+        long sum = 0;
+        for (Review review : reviews) {
+            histogram[review.rating().ordinal()]++;
+            sum += review.rating().ordinal();
+        }
+        return new RatingSummary(reviews.size(), sum, histogram);
+    }
+
+    /**
+     * Returns the summary of reviews counted per {@link Rating} ordinal,
+     * for callers that read the ratings without materializing the reviews.
+     *
+     * @param histogram the number of reviews per rating, owned by the new summary
+     */
+    static RatingSummary of(int[] histogram) {
+        int count = 0;
+        long sum = 0;
+        for (int rating = 0; rating < histogram.length; rating++) {
+            count += histogram[rating];
+            sum += (long) rating * histogram[rating];
+        }
+        return new RatingSummary(count, sum, histogram);
+    }
+
+    /**
+     * Returns the summary that results from adding one more review.
+     *
+     * @param rating the rating of the new review
+     * @return a new {@code RatingSummary}, this summary is left unchanged
+     */
+    public RatingSummary add(Rating rating) {
+        int[] next = histogram.clone();
+        next[rating.ordinal()]++;
+        return new RatingSummary(count + 1, sum + rating.ordinal(), next);
+    }
+
+    /**
+     * Returns the summary that results from adding every review of {@code reviews}.
+     *
+     * @return a new {@code RatingSummary}, this summary is left unchanged
+     */
+    public RatingSummary addAll(Collection<Review> reviews) {
+        int[] next = histogram.clone();
+        long added = 0;
+        for (Review review : reviews) {
+            next[review.rating().ordinal()]++;
+            added += review.rating().ordinal();
+        }
+        return new RatingSummary(count + reviews.size(), sum + added, next);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCount(Rating rating) {
+        return histogram[rating.ordinal()];
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public double getAverage() {
+        return (count == 0) ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the average of the reviews rounded to the nearest {@link Rating}.
+     *
+     * @return the average rating, {@code NOT_RATED} when there are no reviews
+     */
+    public Rating getRating() {
+        return Rateable.convert((int) Math.round(getAverage()));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder txt = new StringBuilder().append(count).append(" reviews");
+        for (Rating rating : Rating.values()) {
+            txt.append(", ").append(rating.getStars()).append(' ').append(histogram[rating.ordinal()]);
+        }
+        return txt.toString();
+    }
+}
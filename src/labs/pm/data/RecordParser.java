@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * {@code RecordParser} reads product and review records straight from a
+ * region of a {@link CharSequence}, such as a line of a decoded data file.
+ * <br>
+ * Product records are {@code type,id,name,price,rating,bestBefore} and review
+ * records are {@code rating,comments}. As with the {@code product.data.format}
+ * and {@code review.data.format} patterns, the last field runs to the end of the
+ * record. Text fields may also be enclosed in double quotes, with {@code ""}
+ * standing for a quote, so they can contain commas anywhere in the record. The
+ * last field is only taken as quoted when its closing quote ends the record,
+ * otherwise it is kept as it is.
+ * <br>
+ * Numbers, prices and dates are parsed in place, only names and comments
+ * become new strings. Prices go straight to the fixed-point units and scale
+ * a {@link Product} holds.
+ * @author AymanElMikh
+ **/
+final class RecordParser {
+
+    private static final int MAX_COMPACT_DIGITS = 18;
+
+    private final CharSequence text;
+    private final int end;
+    private int pos;
+    private long priceUnits;
+    private int priceScale;
+
+    private RecordParser(CharSequence text, int start, int end) {
+        this.text = text;
+        this.pos = start;
+        this.end = end;
+    }
+
+    /**
+     * Parses a product record.
+     *
+     * @return the product, or {@code null} if the record type is neither {@code D} nor {@code F}
+     * @throws ParseException if a field is missing or malformed
+     * @throws NumberFormatException if the price is not a number, or has too many digits
+     * @throws DateTimeException if the best before date is not a valid date
+     */
+    static Product parseProduct(CharSequence text, int start, int end) throws ParseException {
+        RecordParser in = new RecordParser(text, start, end);
+        int typeEnd = in.fieldEnd();
+        char type = (typeEnd - in.pos == 1) ? text.charAt(in.pos) : '?';
+        in.pos = typeEnd;
+        in.skipDelimiter();
+        int id = in.nextInt();
+        in.skipDelimiter();
+        String name = in.nextString(false);
+        in.nextPrice();
+        Rating rating = Rateable.convert(in.nextInt());
+        return switch (type) {
+            case 'D' -> new Drink(id, name, in.priceUnits, in.priceScale, rating);
+            case 'F' -> {
+                in.skipDelimiter();
+                yield new Food(id, name, in.priceUnits, in.priceScale, rating, in.lastDate());
+            }
+            default -> null;
+        };
+    }
+
+    /**
+     * Parses a review record.
+     *
+     * @throws ParseException if a field is missing or malformed
+     */
+    static Review parseReview(CharSequence text, int start, int end) throws ParseException {
+        RecordParser in = new RecordParser(text, start, end);
+        Rating rating = Rateable.convert(in.nextInt());
+        in.skipDelimiter();
+        return new Review(rating, in.nextString(true));
+    }
+
+    /**
+     * Returns the index of the line feed ending the line that starts at {@code start},
+     * or the length of {@code text} for the last line.
+     */
+    static int lineEnd(CharSequence text, int start) {
+        int end = start;
+        while (end < text.length() && text.charAt(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    private int fieldEnd() {
+        int i = pos;
+        while (i < end && text.charAt(i) != ',') {
+            i++;
+        }
+        return i;
+    }
+
+    private void skipDelimiter() throws ParseException {
+        if (pos >= end) {
+            throw new ParseException("Missing field", pos);
+        }
+        pos++;
+    }
+
+    private int nextInt() throws ParseException {
+        int start = pos;
+        int limit = fieldEnd();
+        boolean negative = pos < limit && text.charAt(pos) == '-';
+        int i = (negative || (pos < limit && text.charAt(pos) == '+')) ? pos + 1 : pos;
+        if (i == limit) {
+            throw new ParseException("Expected a number", start);
+        }
+        long value = 0;
+        for (; i < limit; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || (value = value * 10 + digit) > (long) Integer.MAX_VALUE + 1) {
+                throw new ParseException("Expected a number", i);
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new ParseException("Number out of range", start);
+        }
+        pos = limit;
+        return (int) value;
+    }
+
+    private void nextPrice() throws ParseException {
+        int limit = fieldEnd();
+        price(pos, limit);
+        pos = limit;
+        skipDelimiter();
+    }
+
+    /*
+     * Reads the digits as units and a scale, so "1.99" is 199 units at scale 2.
+     * Anything else, such as an exponent, goes through BigDecimal. Whitespace
+     * around the price is ignored, as Double.parseDouble did.
+     */
+    private void price(int start, int limit) {
+        while (start < limit && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (limit > start && text.charAt(limit - 1) <= ' ') {
+            limit--;
+        }
+        int i = start;
+        boolean negative = i < limit && text.charAt(i) == '-';
+        if (negative || (i < limit && text.charAt(i) == '+')) {
+            i++;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < limit; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9' && digits < MAX_COMPACT_DIGITS) {
+                unscaled = unscaled * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                BigDecimal value = new BigDecimal(text.subSequence(start, limit).toString());
+                if (value.unscaledValue().bitLength() >= Long.SIZE) {
+                    throw new NumberFormatException("Price out of range: \"" + text.subSequence(start, limit) + "\"");
+                }
+                priceUnits = value.unscaledValue().longValue();
+                priceScale = value.scale();
+                return;
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Expected a price: \"" + text.subSequence(start, limit) + "\"");
+        }
+        priceUnits = negative ? -unscaled : unscaled;
+        priceScale = Math.max(scale, 0);
+    }
+
+    /**
+     * Reads a text field. When {@code last} is set the field runs to the end of
+     * the record, and is unquoted only if its closing quote ends the record.
+     * Otherwise it ends at the next comma.
+     */
+    private String nextString(boolean last) throws ParseException {
+        if (pos < end && text.charAt(pos) == '"') {
+            int start = pos;
+            String value = quoted();
+            if (!last) {
+                if (value == null) {
+                    throw new ParseException("Unterminated quoted field", start);
+                }
+                if (pos < end) {
+                    if (text.charAt(pos) != ',') {
+                        throw new ParseException("Expected a comma after a quoted field", pos);
+                    }
+                    pos++;
+                }
+                return value;
+            }
+            if (value != null && pos == end) {
+                return value;
+            }
+            pos = start;
+        }
+        int limit = last ? end : fieldEnd();
+        String value = text.subSequence(pos, limit).toString();
+        pos = limit;
+        if (!last) {
+            skipDelimiter();
+        }
+        return value;
+    }
+
+    /*
+     * Reads a quoted field up to its closing quote.
+     *
+     * @return the unquoted text, or null if the field is not terminated
+     */
+    private String quoted() {
+        StringBuilder value = new StringBuilder();
+        pos++;
+        while (true) {
+            if (pos >= end) {
+                return null;
+            }
+            char c = text.charAt(pos++);
+            if (c != '"') {
+                value.append(c);
+            } else if (pos < end && text.charAt(pos) == '"') {
+                value.append('"');
+                pos++;
+            } else {
+                return value.toString();
+            }
+        }
+    }
+
+    private LocalDate lastDate() {
+        if (end - pos == 10 && text.charAt(pos + 4) == '-' && text.charAt(pos + 7) == '-') {
+            int year = digits(pos, 4);
+            int month = digits(pos + 5, 2);
+            int day = digits(pos + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(text.subSequence(pos, end));
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@code ReportExport} writes the reports of a whole catalog into one compressed
+ * tar archive, streamed through a single output stream.
+ * <p>
+ * The catalog is cut into chunks of products that are rendered in parallel on a
+ * fork-join pool. Each chunk renders its reports as tar entries and compresses
+ * them as one gzip member of its own, so compression runs in parallel too, and
+ * the members are written in catalog order: a concatenation of gzip members is
+ * a gzip stream, which reads as one {@code .tar.gz} archive.
+ * </p>
+ * <p>
+ * Only a fixed window of chunks is in flight at once, so memory stays bounded by
+ * the window whatever the size of the catalog, unlike a ZIP archive whose central
+ * directory grows with every entry.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class ReportExport {
+
+    /**
+     * Renders every report of one product into {@code sink}. Called on a pool thread.
+     */
+    @FunctionalInterface
+    interface Renderer {
+        void render(ProductEntry entry, Sink sink) throws IOException;
+    }
+
+    private record Chunk(byte[] bytes, int products, int reports) {}
+
+    private static final int CHUNK_SIZE = 256;
+    private static final int BLOCK = 512;
+    private static final byte[] ZEROS = new byte[BLOCK];
+    private static final byte[] END_OF_ARCHIVE = endOfArchive();
+
+    private final List<ProductEntry> entries;
+    private final String fileName;
+    private final Renderer renderer;
+    private final int parallelism;
+
+    /**
+     * @param fileName the {@code MessageFormat} pattern of an archive entry name,
+     *                 of the product id and language tag
+     * @param parallelism the number of threads rendering chunks
+     */
+    ReportExport(List<ProductEntry> entries, String fileName, Renderer renderer, int parallelism) {
+        this.entries = entries;
+        this.fileName = fileName;
+        this.renderer = renderer;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Writes the archive to {@code out}, calling {@code progress} from this thread
+     * after each chunk.
+     *
+     * @return the number of reports written
+     * @throws IOException if a report cannot be rendered or {@code out} fails
+     */
+    long export(OutputStream out, Consumer<ExportProgress> progress) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Deque<ForkJoinTask<Chunk>> window = new ArrayDeque<>();
+        try {
+            int next = 0;
+            long products = 0;
+            long reports = 0;
+            long bytes = 0;
+            while (next < entries.size() || !window.isEmpty()) {
+                while (next < entries.size() && window.size() < 2 * parallelism) {
+                    int from = next;
+                    int to = Math.min(entries.size(), from + CHUNK_SIZE);
+                    window.add(pool.submit(() -> render(from, to)));
+                    next = to;
+                }
+                Chunk chunk = join(window.poll());
+                out.write(chunk.bytes());
+                products += chunk.products();
+                reports += chunk.reports();
+                bytes += chunk.bytes().length;
+                progress.accept(new ExportProgress(products, entries.size(), reports, bytes));
+            }
+            out.write(END_OF_ARCHIVE);
+            out.flush();
+            return reports;
+        } finally {
+            window.forEach(task -> task.cancel(true));
+            pool.shutdownNow();
+        }
+    }
+
+    private Chunk render(int from, int to) throws IOException {
+        Sink sink = new Sink(new MessageFormat(fileName));
+        for (int i = from; i < to; i++) {
+            renderer.render(entries.get(i), sink);
+        }
+        return new Chunk(sink.finish(), to - from, sink.reports);
+    }
+
+    private static Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case IOException cause -> throw cause;
+                case UncheckedIOException cause -> throw cause.getCause();
+                default -> throw new IOException("Error rendering reports " + e.getCause(), e.getCause());
+            }
+        }
+    }
+
+    private static byte[] endOfArchive() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+                gzip.write(new byte[2 * BLOCK]);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Collects the reports of one chunk as ustar entries of one gzip member.
+     * Used by one thread at a time.
+     */
+    static final class Sink {
+
+        private final MessageFormat fileName;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final GZIPOutputStream out;
+        private final StringBuilder text = new StringBuilder();
+        private final byte[] header = new byte[BLOCK];
+        private final long modified = System.currentTimeMillis() / 1000;
+        private int reports;
+
+        private Sink(MessageFormat fileName) throws IOException {
+            this.fileName = fileName;
+            this.out = new GZIPOutputStream(bytes, 1 << 16);
+        }
+
+        /**
+         * Returns an empty builder to render the next report into.
+         */
+        StringBuilder text() {
+            text.setLength(0);
+            return text;
+        }
+
+        /**
+         * Adds a report to the archive.
+         *
+         * @throws IOException if the entry name is too long for a tar header
+         */
+        void add(int productId, String languageTag, CharSequence report) throws IOException {
+            byte[] name = fileName.format(new Object[]{productId, languageTag}).getBytes(StandardCharsets.UTF_8);
+            byte[] data = report.toString().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 100) {
+                throw new IOException("Archive entry name too long " + new String(name, StandardCharsets.UTF_8));
+            }
+            Arrays.fill(header, (byte) 0);
+            System.arraycopy(name, 0, header, 0, name.length);
+            octal(0644, 100, 8);
+            octal(0, 108, 8);
+            octal(0, 116, 8);
+            octal(data.length, 124, 12);
+            octal(modified, 136, 12);
+            Arrays.fill(header, 148, 156, (byte) ' ');
+            header[156] = '0';
+            System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+            int checksum = 0;
+            for (byte b : header) {
+                checksum += b & 0xff;
+            }
+            octal(checksum, 148, 7);
+            out.write(header);
+            out.write(data);
+            out.write(ZEROS, 0, (BLOCK - data.length % BLOCK) % BLOCK);
+            reports++;
+        }
+
+        private byte[] finish() throws IOException {
+            out.finish();
+            return bytes.toByteArray();
+        }
+
+        /*
+         * Writes value as zero padded octal digits followed by a NUL, in length bytes.
+         */
+        private void octal(long value, int offset, int length) {
+            for (int i = offset + length - 2; i >= offset; i--) {
+                header[i] = (byte) ('0' + (value & 7));
+                value >>>= 3;
+            }
+            header[offset + length - 1] = 0;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * {@code ReportStore} keeps one rendered report per product version and locale,
+ * and hands it out to every client that asks for it.
+ * <p>
+ * The content of a report only depends on the product version and the locale,
+ * so the first request for a version renders it into the store folder through
+ * the {@link ReportWriter}, and each client report file is then a hard link to
+ * that stored file, or a copy where the file system has no hard links. A client
+ * file is replaced by an atomic move, so readers never see it half written.
+ * </p>
+ * <p>
+ * Only the latest version of a product and locale is kept. A request for a newer
+ * version supersedes the stored one, whose file is deleted once written. The
+ * client files linked to it keep their content. A request for an older version
+ * than the stored one is given the stored one.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class ReportStore {
+
+    private record Key(int productId, String languageTag) {}
+
+    private record Stored(long version, Path file, CompletableFuture<Path> written) {}
+
+    private static final Logger logger = Logger.getLogger(ReportStore.class.getName());
+    private static final int MAX_RETRIES = 3;
+
+    private final Path folder;
+    private final String fileName;
+    private final ReportWriter writer;
+    private final Map<Key, Stored> reports = new ConcurrentHashMap<>();
+    private volatile boolean linking = true;
+
+    /**
+     * Empties {@code folder} of the reports stored by an earlier run.
+     *
+     * @param fileName the {@code MessageFormat} pattern of a stored report file, of
+     *                 the product id, product version and language tag
+     */
+    ReportStore(Path folder, String fileName, ReportWriter writer) {
+        this.folder = folder;
+        this.fileName = fileName;
+        this.writer = writer;
+        try {
+            Files.createDirectories(folder);
+            try (Stream<Path> files = Files.list(folder)) {
+                files.forEach(ReportStore::delete);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error clearing report store " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Points {@code client} at the stored report of a product version, rendering
+     * it with {@code report} unless it is stored already.
+     *
+     * @return a future completed with {@code client} once it holds the report
+     */
+    CompletableFuture<Path> publish(Path client, int productId, long version, String languageTag,
+                                    ReportWriter.Report report) {
+        return publish(client, productId, version, languageTag, report, 0);
+    }
+
+    /*
+     * A stored file superseded and deleted between being written and being linked
+     * is retried against the newer version, a bounded number of times. Any other
+     * missing file, such as a missing reports folder, fails the report.
+     */
+    private CompletableFuture<Path> publish(Path client, int productId, long version, String languageTag,
+                                            ReportWriter.Report report, int retries) {
+        Key key = new Key(productId, languageTag);
+        Stored stored = get(key, version, report);
+        return stored.written().thenCompose(file -> {
+            try {
+                link(client, file);
+                return CompletableFuture.completedFuture(client);
+            } catch (NoSuchFileException e) {
+                Stored current = reports.get(key);
+                if (Files.exists(file) || current == null || current.version() <= stored.version()
+                        || retries >= MAX_RETRIES) {
+                    return CompletableFuture.failedFuture(e);
+                }
+                return publish(client, productId, version, languageTag, report, retries + 1);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
+
+    private Stored get(Key key, long version, ReportWriter.Report report) {
+        int productId = key.productId();
+        String languageTag = key.languageTag();
+        Stored[] rendered = new Stored[1];
+        Stored stored = reports.compute(key, (ignored, current) -> {
+            if (current != null && current.version() >= version) {
+                return current;
+            }
+            Path file = folder.resolve(MessageFormat.format(fileName, productId, version, languageTag));
+            rendered[0] = new Stored(version, file, new CompletableFuture<>());
+            if (current != null) {
+                current.written().whenComplete((written, failure) -> delete(current.file()));
+            }
+            return rendered[0];
+        });
+        if (rendered[0] != null) {
+            writer.submit(stored.file(), version, report).whenComplete((file, failure) -> {
+                if (failure == null) {
+                    stored.written().complete(file);
+                } else {
+                    reports.remove(key, stored);
+                    stored.written().completeExceptionally(failure);
+                }
+            });
+        }
+        return stored;
+    }
+
+    /*
+     * Links, or copies, the stored file next to the client file first, so the
+     * client file itself is only ever replaced by a rename.
+     */
+    private void link(Path client, Path file) throws IOException {
+        Path temp = client.resolveSibling(client.getFileName() + "." + Thread.currentThread().threadId() + ".tmp");
+        Files.deleteIfExists(temp);
+        if (linking) {
+            try {
+                Files.createLink(temp, file);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                if (e instanceof NoSuchFileException missing) {
+                    throw missing;
+                }
+                logger.log(Level.INFO, "Copying reports, the report store cannot be linked to " + e.getMessage());
+                linking = false;
+            }
+        }
+        if (!linking) {
+            Files.copy(file, temp, REPLACE_EXISTING);
+        }
+        Files.move(temp, client, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error deleting stored report " + e.getMessage(), e);
+        }
+    }
+}
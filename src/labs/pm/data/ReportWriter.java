@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * {@code ReportWriter} renders and writes product reports off the caller's thread.
+ * <p>
+ * Reports are queued on bounded queues, one per writer thread, chosen by file so
+ * that a file is only ever written by one thread. A writer takes every report
+ * queued so far, renders each from the snapshot it was queued with and writes it
+ * as UTF-8 through a {@link FileChannel}, replacing whatever the file held, from
+ * a direct buffer it reuses for every report.
+ * </p>
+ * <p>
+ * When a batch holds several reports for the same file only the one of the
+ * newest product version is written, and all of them complete with the file.
+ * Concurrent callers may queue an older version after a newer one, so the
+ * queue order is not used. A caller blocks while the
+ * queue of its writer is full.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class ReportWriter {
+
+    /**
+     * Renders one report. Called on a writer thread, so it must only read the
+     * immutable state it was created with.
+     */
+    @FunctionalInterface
+    interface Report {
+        void render(StringBuilder out) throws IOException;
+    }
+
+    private record Job(Path file, long version, Report report, CompletableFuture<Path> done) {}
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final List<BlockingQueue<Job>> queues;
+
+    /**
+     * @param writers the number of writer threads
+     * @param queueSize the number of reports each writer queues before callers block
+     */
+    ReportWriter(int writers, int queueSize) {
+        queues = new ArrayList<>(writers);
+        for (int i = 0; i < writers; i++) {
+            BlockingQueue<Job> queue = new ArrayBlockingQueue<>(queueSize);
+            queues.add(queue);
+            Thread writer = new Thread(() -> write(queue), "report-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Queues a report, waiting for room in the queue of its writer.
+     *
+     * @param version the version number of the product the report is rendered from
+     * @return a future completed with {@code file} once the report is written
+     */
+    CompletableFuture<Path> submit(Path file, long version, Report report) {
+        CompletableFuture<Path> done = new CompletableFuture<>();
+        try {
+            queues.get(Math.floorMod(file.hashCode(), queues.size())).put(new Job(file, version, report, done));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+    private void write(BlockingQueue<Job> queue) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        StringBuilder text = new StringBuilder();
+        List<Job> batch = new ArrayList<>();
+        Map<Path, List<Job>> files = new LinkedHashMap<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (Job job : batch) {
+                files.computeIfAbsent(job.file(), ignored -> new ArrayList<>()).add(job);
+            }
+            files.forEach((file, jobs) -> {
+                try {
+                    text.setLength(0);
+                    newest(jobs).report().render(text);
+                    write(file, text, encoder, buffer);
+                    jobs.forEach(job -> job.done().complete(file));
+                } catch (IOException | RuntimeException e) {
+                    jobs.forEach(job -> job.done().completeExceptionally(e));
+                }
+            });
+            files.clear();
+            batch.clear();
+        }
+    }
+
+    private static Job newest(List<Job> jobs) {
+        Job newest = jobs.get(0);
+        for (Job job : jobs) {
+            if (job.version() >= newest.version()) {
+                newest = job;
+            }
+        }
+        return newest;
+    }
+
+    private static void write(Path file, CharSequence text, CharsetEncoder encoder, ByteBuffer buffer)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            CharBuffer in = CharBuffer.wrap(text);
+            encoder.reset();
+            CoderResult result;
+            do {
+                result = encoder.encode(in, buffer, true);
+                drain(channel, buffer);
+            } while (result.isOverflow());
+            do {
+                result = encoder.flush(buffer);
+                drain(channel, buffer);
+            } while (result.isOverflow());
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * {@code ResourceFormatter} renders products and reviews for one locale.
+ * <p>
+ * The {@code product} and {@code review} patterns of the resource bundle are
+ * compiled once, and every argument is rendered straight into the caller's
+ * {@link Appendable}. Dates use an immutable {@link DateTimeFormatter}, and
+ * amounts use an immutable {@link Money} format derived from the currency
+ * format of the locale, so one instance is shared by every thread without locking.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class ResourceFormatter {
+
+    private final Locale locale;
+    private final ResourceBundle resource;
+    private final DateTimeFormatter dateFormat;
+    private final Money moneyFormat;
+    private final Template productPattern;
+    private final Template reviewPattern;
+    private final String food;
+    private final String drink;
+
+    ResourceFormatter(Locale locale){
+        this.locale = locale;
+        resource = ResourceBundle.getBundle("labs.pm.data.resources", locale);
+        dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
+        moneyFormat = new Money(NumberFormat.getCurrencyInstance(locale));
+        productPattern = Template.compile(getText("product"));
+        reviewPattern = Template.compile(getText("review"));
+        food = getText("food");
+        drink = getText("drink");
+    }
+
+    Locale getLocale(){
+        return locale;
+    }
+
+    String formatProduct(Product product){
+        return formatProduct(product, new StringBuilder()).toString();
+    }
+
+    String formatReview(Review review){
+        return formatReview(review, new StringBuilder()).toString();
+    }
+
+    String formatMoney(BigDecimal amount){
+        return formatMoney(amount, new StringBuilder()).toString();
+    }
+
+    StringBuilder formatProduct(Product product, StringBuilder out){
+        try {
+            formatProduct(product, (Appendable) out);
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    StringBuilder formatReview(Review review, StringBuilder out){
+        try {
+            formatReview(review, (Appendable) out);
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    StringBuilder formatMoney(BigDecimal amount, StringBuilder out){
+        try {
+            moneyFormat.format(amount, out);
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends {@code product} as the {@code product} pattern of the locale:
+     * name, price, rating, best before date and type.
+     */
+    <A extends Appendable> A formatProduct(Product product, A out) throws IOException {
+        Template pattern = productPattern;
+        for (int i = 0; i < pattern.arguments.length; i++) {
+            out.append(pattern.literals[i]);
+            switch (pattern.arguments[i]) {
+                case 0 -> out.append(product.getName());
+                case 1 -> moneyFormat.format(product.getPriceUnits(), product.getPriceScale(), out);
+                case 2 -> out.append(product.getRating().getStars());
+                case 3 -> dateFormat.formatTo(product.getBestBefore(), out);
+                case 4 -> out.append(switch (product) {
+                    case Food f -> food;
+                    case Drink d -> drink;
+                });
+                default -> out.append('{').append(String.valueOf(pattern.arguments[i])).append('}');
+            }
+        }
+        out.append(pattern.literals[pattern.arguments.length]);
+        return out;
+    }
+
+    /**
+     * Appends {@code review} as the {@code review} pattern of the locale: rating and comments.
+     */
+    <A extends Appendable> A formatReview(Review review, A out) throws IOException {
+        Template pattern = reviewPattern;
+        for (int i = 0; i < pattern.arguments.length; i++) {
+            out.append(pattern.literals[i]);
+            switch (pattern.arguments[i]) {
+                case 0 -> out.append(review.rating().getStars());
+                case 1 -> out.append(review.comments());
+                default -> out.append('{').append(String.valueOf(pattern.arguments[i])).append('}');
+            }
+        }
+        out.append(pattern.literals[pattern.arguments.length]);
+        return out;
+    }
+
+    String getText(String key){
+        return resource.getString(key);
+    }
+
+    /*
+     * A MessageFormat pattern split into the literal text around each argument.
+     * Only plain {n} arguments are supported, quoting follows MessageFormat: ''
+     * is a quote and text between single quotes is literal. Arguments missing
+     * from the format call render as {n}, like MessageFormat does.
+     */
+    private record Template(String[] literals, int[] arguments) {
+
+        static Template compile(String pattern) {
+            List<String> literals = new ArrayList<>();
+            List<Integer> arguments = new ArrayList<>();
+            StringBuilder literal = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') {
+                    if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                        literal.append('\'');
+                        i++;
+                    } else {
+                        quoted = !quoted;
+                    }
+                } else if (c == '{' && !quoted) {
+                    int close = pattern.indexOf('}', i);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("Unmatched braces in pattern " + pattern);
+                    }
+                    String argument = pattern.substring(i + 1, close).trim();
+                    if (argument.isEmpty() || !argument.chars().allMatch(Character::isDigit)) {
+                        throw new IllegalArgumentException("Unsupported argument {" + argument + "} in pattern " + pattern);
+                    }
+                    literals.add(literal.toString());
+                    arguments.add(Integer.parseInt(argument));
+                    literal.setLength(0);
+                    i = close;
+                } else {
+                    literal.append(c);
+                }
+            }
+            literals.add(literal.toString());
+            return new Template(literals.toArray(String[]::new),
+                    arguments.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /*
+     * An immutable rendering of the currency DecimalFormat of a locale: its
+     * prefixes and suffixes, grouping, separators, fraction digits and rounding.
+     * Fixed-point amounts that need no rounding are rendered without allocating.
+     */
+    private static final class Money {
+
+        private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L,
+                10_000_000L, 100_000_000L, 1_000_000_000L, 10_000_000_000L, 100_000_000_000L,
+                1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L, 1_000_000_000_000_000L,
+                10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L};
+
+        private final String positivePrefix;
+        private final String positiveSuffix;
+        private final String negativePrefix;
+        private final String negativeSuffix;
+        private final boolean grouping;
+        private final int groupingSize;
+        private final char groupingSeparator;
+        private final char decimalSeparator;
+        private final char zero;
+        private final int minimumIntegerDigits;
+        private final int minimumFractionDigits;
+        private final int maximumFractionDigits;
+        private final RoundingMode roundingMode;
+
+        private Money(NumberFormat numberFormat) {
+            if (!(numberFormat instanceof DecimalFormat format)) {
+                throw new IllegalArgumentException("Unsupported currency format " + numberFormat);
+            }
+            DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+            positivePrefix = format.getPositivePrefix();
+            positiveSuffix = format.getPositiveSuffix();
+            negativePrefix = format.getNegativePrefix();
+            negativeSuffix = format.getNegativeSuffix();
+            grouping = format.isGroupingUsed() && format.getGroupingSize() > 0;
+            groupingSize = format.getGroupingSize();
+            groupingSeparator = symbols.getMonetaryGroupingSeparator();
+            decimalSeparator = symbols.getMonetaryDecimalSeparator();
+            zero = symbols.getZeroDigit();
+            minimumIntegerDigits = format.getMinimumIntegerDigits();
+            minimumFractionDigits = format.getMinimumFractionDigits();
+            maximumFractionDigits = format.getMaximumFractionDigits();
+            roundingMode = format.getRoundingMode();
+        }
+
+        /*
+         * Renders units * 10^-scale like format(BigDecimal) does. A scale of at
+         * most the maximum fraction digits never rounds, so the digits are taken
+         * from the units directly, anything else goes through BigDecimal.
+         */
+        private void format(long units, int scale, Appendable out) throws IOException {
+            if (scale < 0 || scale > maximumFractionDigits || maximumFractionDigits >= POWERS_OF_TEN.length
+                    || units == Long.MIN_VALUE) {
+                format(BigDecimal.valueOf(units, scale), out);
+                return;
+            }
+            long value;
+            try {
+                value = Math.multiplyExact(Math.abs(units), POWERS_OF_TEN[maximumFractionDigits - scale]);
+            } catch (ArithmeticException e) {
+                format(BigDecimal.valueOf(units, scale), out);
+                return;
+            }
+            int fraction = maximumFractionDigits;
+            if (minimumFractionDigits < maximumFractionDigits) {
+                while (fraction > minimumFractionDigits && value % 10 == 0 && value != 0) {
+                    value /= 10;
+                    fraction--;
+                }
+                if (value == 0) {
+                    fraction = minimumFractionDigits;
+                }
+            }
+            long integerPart = value / POWERS_OF_TEN[fraction];
+            long fractionPart = value % POWERS_OF_TEN[fraction];
+            int integer = 0;
+            while (integer < POWERS_OF_TEN.length && integerPart >= POWERS_OF_TEN[integer]) {
+                integer++;
+            }
+            if (value == 0 && fraction == 0) {
+                integer = 1;
+            }
+            boolean negative = units < 0;
+            out.append(negative ? negativePrefix : positivePrefix);
+            int width = Math.max(integer, minimumIntegerDigits);
+            for (int i = width; i > 0; i--) {
+                out.append(i > integer ? zero : (char) (zero + digit(integerPart, i - 1)));
+                if (grouping && i > 1 && (i - 1) % groupingSize == 0) {
+                    out.append(groupingSeparator);
+                }
+            }
+            if (fraction > 0) {
+                out.append(decimalSeparator);
+                for (int i = fraction; i > 0; i--) {
+                    out.append((char) (zero + digit(fractionPart, i - 1)));
+                }
+            }
+            out.append(negative ? negativeSuffix : positiveSuffix);
+        }
+
+        private static int digit(long value, int position) {
+            return position < POWERS_OF_TEN.length ? (int) (value / POWERS_OF_TEN[position] % 10) : 0;
+        }
+
+        private void format(BigDecimal amount, Appendable out) throws IOException {
+            BigDecimal rounded = amount.setScale(maximumFractionDigits, roundingMode);
+            if (minimumFractionDigits < maximumFractionDigits) {
+                rounded = rounded.stripTrailingZeros();
+                if (rounded.scale() < minimumFractionDigits) {
+                    rounded = rounded.setScale(minimumFractionDigits);
+                }
+            }
+            int fraction = rounded.scale();
+            String digits = rounded.unscaledValue().abs().toString();
+            boolean negative = amount.signum() < 0;
+            out.append(negative ? negativePrefix : positivePrefix);
+            int integer = Math.max(digits.length() - fraction, 0);
+            int width = Math.max(integer, minimumIntegerDigits);
+            for (int i = width; i > 0; i--) {
+                int index = integer - i;
+                out.append(index < 0 ? zero : (char) (zero + digits.charAt(index) - '0'));
+                if (grouping && i > 1 && (i - 1) % groupingSize == 0) {
+                    out.append(groupingSeparator);
+                }
+            }
+            if (fraction > 0) {
+                out.append(decimalSeparator);
+                for (int i = fraction; i > 0; i--) {
+                    int index = digits.length() - i;
+                    out.append(index < 0 ? zero : (char) (zero + digits.charAt(index) - '0'));
+                }
+            }
+            out.append(negative ? negativeSuffix : positiveSuffix);
+        }
+    }
+}
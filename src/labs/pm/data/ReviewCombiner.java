@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * {@code ReviewCombiner} applies concurrent reviews in a flat-combining style.
+ * <p>
+ * Each review is queued on the stripe of its product. The first thread to claim
+ * the stripe becomes its combiner: it takes the stripe lock, drains the queue,
+ * groups the reviews by product and applies each group at once, so a product
+ * reviewed by many threads is rated once per group rather than once per review.
+ * The other threads return right away with the future of their review.
+ * A review submitted while the stripe is idle is applied at once by its caller.
+ * </p>
+ * <p>
+ * Only the combiner of a stripe touches its drain buffer, so the buffer is
+ * reused from one combining pass to the next.
+ * </p>
+ * <p>
+ * A combiner looks at the queue again after giving up the stripe, so a review
+ * queued by a thread that could not claim it is never left behind.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class ReviewCombiner {
+
+    /**
+     * Applies the reviews of one product, in order, under the stripe lock of the product.
+     */
+    @FunctionalInterface
+    interface Applier {
+
+        /**
+         * @return a future completed with the rated product, or with {@code null} if
+         * the product does not exist
+         */
+        CompletableFuture<Product> apply(int productId, List<Review> reviews);
+    }
+
+    private record Request(int productId, Review review, CompletableFuture<Product> done) {}
+
+    private static final int MAX_COMBINED = 4096;
+    private static final Comparator<Request> BY_PRODUCT = Comparator.comparingInt(Request::productId);
+
+    private final Lock[] stripes;
+    private final List<Queue<Request>> queues;
+    private final List<List<Request>> drained;
+    private final AtomicIntegerArray combining;
+    private final Applier applier;
+
+    /**
+     * @param stripes the stripe locks of the catalog, a power of two of them
+     */
+    ReviewCombiner(Lock[] stripes, Applier applier) {
+        this.stripes = stripes;
+        this.queues = new ArrayList<>(stripes.length);
+        this.drained = new ArrayList<>(stripes.length);
+        for (int i = 0; i < stripes.length; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+            drained.add(new ArrayList<>());
+        }
+        this.combining = new AtomicIntegerArray(stripes.length);
+        this.applier = applier;
+    }
+
+    /**
+     * Queues a review and combines the queue of its stripe unless another thread does.
+     *
+     * @return a future completed with the product rated with the review
+     */
+    CompletableFuture<Product> submit(int productId, Review review) {
+        int stripe = productId & (stripes.length - 1);
+        Queue<Request> queue = queues.get(stripe);
+        CompletableFuture<Product> done;
+        if (queue.isEmpty() && combining.compareAndSet(stripe, 0, 1)) {
+            try {
+                done = applyAlone(stripe, productId, review);
+            } finally {
+                combining.set(stripe, 0);
+            }
+        } else {
+            Request request = new Request(productId, review, new CompletableFuture<>());
+            queue.add(request);
+            done = request.done();
+        }
+        while (!queue.isEmpty() && combining.compareAndSet(stripe, 0, 1)) {
+            try {
+                combine(stripe);
+            } finally {
+                combining.set(stripe, 0);
+            }
+        }
+        return done;
+    }
+
+    /*
+     * Nothing is queued on an uncontended stripe, so its claimant applies its
+     * own review straight away.
+     */
+    private CompletableFuture<Product> applyAlone(int stripe, int productId, Review review) {
+        Lock lock = stripes[stripe];
+        try {
+            lock.lock();
+            return applier.apply(productId, List.of(review));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Drains the queue of the stripe and applies each product in turn. The sort
+     * is stable, so the reviews of a product keep the order they were queued in.
+     */
+    private void combine(int stripe) {
+        Queue<Request> queue = queues.get(stripe);
+        List<Request> batch = drained.get(stripe);
+        Request request;
+        while (batch.size() < MAX_COMBINED && (request = queue.poll()) != null) {
+            batch.add(request);
+        }
+        batch.sort(BY_PRODUCT);
+        Lock lock = stripes[stripe];
+        try {
+            lock.lock();
+            for (int start = 0, end; start < batch.size(); start = end) {
+                int productId = batch.get(start).productId();
+                end = start + 1;
+                while (end < batch.size() && batch.get(end).productId() == productId) {
+                    end++;
+                }
+                apply(productId, batch.subList(start, end));
+            }
+        } finally {
+            lock.unlock();
+            batch.clear();
+        }
+    }
+
+    private void apply(int productId, List<Request> requests) {
+        List<Request> group = List.copyOf(requests);
+        try {
+            List<Review> reviews = new ArrayList<>(group.size());
+            group.forEach(request -> reviews.add(request.review()));
+            CompletableFuture<Product> applied = applier.apply(productId, reviews);
+            if (applied.isDone() && !applied.isCompletedExceptionally()) {
+                Product product = applied.join();
+                group.forEach(request -> request.done().complete(product));
+            } else {
+                applied.whenComplete((product, failure) -> group.forEach(request -> {
+                    if (failure == null) {
+                        request.done().complete(product);
+                    } else {
+                        request.done().completeExceptionally(failure);
+                    }
+                }));
+            }
+        } catch (RuntimeException e) {
+            group.forEach(request -> request.done().completeExceptionally(e));
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * {@code ReviewJournal} is the append-only write-ahead log of accepted reviews
+ * and created products.
+ * <p>
+ * Each review is appended as a record {@code length, crc32, product id, rating,
+ * comments} to the current journal segment, and each created product as a record
+ * {@code length, crc32, product id, -1, product fields} ahead of its reviews. A single writer thread collects the
+ * records queued within the commit window, writes them in one go and forces the
+ * segment to disk once for the whole group, then completes the future of every
+ * record in the group.
+ * </p>
+ * <p>
+ * Segments are numbered. {@link #rotate()} starts a new segment so that older ones
+ * can be folded into a catalog snapshot and then deleted.
+ * </p>
+ * <p>
+ * A group whose write fails may leave a torn record behind. The segment is cut
+ * back to the end of the last forced group before anything else is written to
+ * it, so replay, which stops at the first torn record, never loses a later one.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class ReviewJournal {
+
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_GROUP = 4096;
+    private static final byte PRODUCT = -1;
+    private static final Logger logger = Logger.getLogger(ReviewJournal.class.getName());
+
+    private sealed interface Request permits Append, Create, Rotate {
+        CompletableFuture<Void> done();
+    }
+
+    private record Append(int productId, List<Review> reviews, CompletableFuture<Void> done) implements Request {}
+
+    private record Create(Product product, CompletableFuture<Void> done) implements Request {}
+
+    private record Rotate(long segment, CompletableFuture<Void> done) implements Request {}
+
+    private final Path folder;
+    private final NumberedFiles segments;
+    private final long commitWindowNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long segment;
+    private long current;
+    private long synced;
+    private boolean torn;
+
+    /**
+     * Opens a new segment numbered after every segment already in {@code folder}.
+     *
+     * @param segments the naming of the segment files
+     * @param firstSegment the lowest number the new segment may have
+     * @param commitWindowMillis how long the writer waits to group more records before a sync
+     */
+    ReviewJournal(Path folder, NumberedFiles segments, long firstSegment, long commitWindowMillis) throws IOException {
+        this.folder = folder;
+        this.segments = segments;
+        this.commitWindowNanos = TimeUnit.MILLISECONDS.toNanos(commitWindowMillis);
+        List<Path> existing = segments.list(folder);
+        this.segment = existing.isEmpty() ? firstSegment :
+                Math.max(firstSegment, segments.numberOf(existing.get(existing.size() - 1)) + 1);
+        this.current = segment;
+        this.channel = open(segment);
+        this.synced = channel.size();
+        Thread writer = new Thread(this::write, "review-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a review for the next group commit.
+     *
+     * @return a future completed once the review is durable on disk
+     */
+    CompletableFuture<Void> append(int productId, Review review) {
+        return append(productId, List.of(review));
+    }
+
+    /**
+     * Queues the reviews of one product, in order, for the next group commit.
+     *
+     * @return a future completed once every review is durable on disk
+     */
+    CompletableFuture<Void> append(int productId, List<Review> reviews) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new Append(productId, reviews, done));
+        return done;
+    }
+
+    /**
+     * Queues a created product for the next group commit. It must be queued
+     * before any review of the product.
+     *
+     * @return a future completed once the product is durable on disk
+     */
+    CompletableFuture<Void> append(Product product) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue.add(new Create(product, done));
+        return done;
+    }
+
+    /**
+     * Starts a new segment. Every review appended before this call stays in the
+     * older segments, every review appended after it goes to the new one.
+     *
+     * @return a future completed with the new segment number once the older segments are closed
+     */
+    CompletableFuture<Long> rotate() {
+        synchronized (queue) {
+            long next = ++segment;
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            queue.add(new Rotate(next, done));
+            return done.thenApply(ignored -> next);
+        }
+    }
+
+    /**
+     * Deletes the segments numbered below {@code segment}, once they are folded into a snapshot.
+     */
+    void deleteBefore(long segment) throws IOException {
+        for (Path file : segments.list(folder)) {
+            if (segments.numberOf(file) < segment) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Reads every intact record of {@code file} in append order. Reading stops at
+     * the first torn or corrupt record, which can only be the tail of a crashed write.
+     *
+     * @param products receives each created product
+     * @param reviews receives the product id and the review of each review record
+     * @return the number of records read
+     */
+    static int replay(Path file, Consumer<Product> products, ObjIntConsumer<Review> reviews) throws IOException {
+        int count = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            SnapshotFile.Input records = new SnapshotFile.Input(in, file, in.size());
+            CRC32 crc = new CRC32();
+            while (records.remaining() >= HEADER_SIZE) {
+                long start = records.position();
+                ByteBuffer header = records.next(HEADER_SIZE);
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < Integer.BYTES + Byte.BYTES || length > records.remaining()) {
+                    logger.log(Level.WARNING, "Torn journal record in " + file + " at " + start);
+                    break;
+                }
+                ByteBuffer record = records.next(length);
+                crc.reset();
+                crc.update(record.slice());
+                if ((int) crc.getValue() != checksum) {
+                    logger.log(Level.WARNING, "Corrupt journal record in " + file + " at " + start);
+                    break;
+                }
+                int productId = record.getInt();
+                byte type = record.get();
+                if (type == PRODUCT) {
+                    products.accept(SnapshotFile.readProduct(record));
+                } else {
+                    byte[] comments = new byte[record.remaining()];
+                    record.get(comments);
+                    reviews.accept(new Review(Rateable.convert(type), new String(comments, StandardCharsets.UTF_8)), productId);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private FileChannel open(long segment) throws IOException {
+        return FileChannel.open(folder.resolve(segments.name(segment)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void write() {
+        List<Request> group = new ArrayList<>();
+        while (true) {
+            try {
+                group.add(queue.take());
+                long deadline = System.nanoTime() + commitWindowNanos;
+                long wait;
+                while (group.size() < MAX_GROUP && (wait = deadline - System.nanoTime()) > 0) {
+                    Request next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+                queue.drainTo(group, MAX_GROUP - group.size());
+                commit(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    /*
+     * Writes the group in order, switching segments at each rotation, with one
+     * force per segment touched. The records before a rotation are durable once
+     * it succeeds, so their futures complete then. The others complete at the end,
+     * exceptionally with whatever the write threw, so a failed group never stops
+     * the writer thread from taking the next one.
+     */
+    private void commit(List<Request> group) {
+        int durable = 0;
+        try {
+            if (torn) {
+                truncate();
+            }
+            for (int i = 0; i < group.size(); i++) {
+                switch (group.get(i)) {
+                    case Append append -> {
+                        for (Review review : append.reviews()) {
+                            byte[] comments = review.comments().getBytes(StandardCharsets.UTF_8);
+                            put(append.productId(), (byte) review.rating().ordinal(), comments.length,
+                                    out -> out.put(comments));
+                        }
+                    }
+                    case Create create -> put(create.product().getId(), PRODUCT,
+                            SnapshotFile.productLength(create.product()),
+                            out -> SnapshotFile.putProduct(out, create.product()));
+                    case Rotate rotate -> {
+                        sync();
+                        channel.close();
+                        current = rotate.segment();
+                        synced = 0;
+                        channel = open(current);
+                        synced = channel.size();
+                        durable = complete(group, durable, i + 1);
+                    }
+                }
+            }
+            sync();
+            complete(group, durable, group.size());
+        } catch (Throwable e) {
+            logger.log(Level.SEVERE, "Error writing review journal " + e.getMessage(), e);
+            buffer.clear();
+            torn = true;
+            for (Request request : group.subList(durable, group.size())) {
+                request.done().completeExceptionally(e);
+            }
+        }
+    }
+
+    private static int complete(List<Request> group, int from, int to) {
+        for (Request request : group.subList(from, to)) {
+            request.done().complete(null);
+        }
+        return to;
+    }
+
+    /*
+     * Cuts the current segment back to the end of the last forced group, reopening
+     * it if a failed rotation left it closed. Until this succeeds every group fails.
+     */
+    private void truncate() throws IOException {
+        if (!channel.isOpen()) {
+            channel = open(current);
+        }
+        channel.truncate(synced);
+        torn = false;
+    }
+
+    /*
+     * Writes one record, with {@code body} filling exactly {@code bodyLength} bytes.
+     */
+    private void put(int productId, byte type, int bodyLength, Consumer<ByteBuffer> body) throws IOException {
+        int length = Integer.BYTES + Byte.BYTES + bodyLength;
+        ByteBuffer out = buffer;
+        if (HEADER_SIZE + length > buffer.remaining()) {
+            flush();
+            if (HEADER_SIZE + length > buffer.capacity()) {
+                out = ByteBuffer.allocate(HEADER_SIZE + length);
+            }
+        }
+        int start = out.position();
+        out.position(start + HEADER_SIZE);
+        out.putInt(productId).put(type);
+        body.accept(out);
+        crc.reset();
+        crc.update(out.slice(start + HEADER_SIZE, length));
+        out.putInt(start, length).putInt(start + Integer.BYTES, (int) crc.getValue());
+        if (out != buffer) {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void sync() throws IOException {
+        flush();
+        channel.force(false);
+        synced = channel.position();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.nio.file.Path;
+
+/**
+ * {@code ReviewLocation} is the on-disk offset index entry of one product: the
+ * byte range of a file that holds its reviews, and how many reviews it holds.
+ * <br>
+ * The range is a whole {@code review{id}.csv} file, or the review section of a
+ * product record in a catalog snapshot.
+ * @author AymanElMikh
+ **/
+record ReviewLocation(Path file, Format format, long offset, int length, int count) {
+
+    enum Format {
+        /** One review per line, as parsed by {@link RecordParser#parseReview}. */
+        CSV,
+        /** A sequence of {@code rating, comments} as written by {@link SnapshotFile}. */
+        SNAPSHOT
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@code ReviewStore} pages the reviews of lazily loaded products in from disk.
+ * <p>
+ * Reviews read from a {@link ReviewLocation} are kept in a least recently used
+ * cache bounded by the total number of cached reviews, so the reviews resident
+ * in memory stay within {@code capacity} however large the catalog is. Locations
+ * are never rewritten in place, so a cached review list never goes stale: an
+ * entry moved to a new location simply misses the cache. Cached lists are
+ * {@link PackedReviews} and are never modified once cached.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class ReviewStore {
+
+    private static final Logger logger = Logger.getLogger(ReviewStore.class.getName());
+
+    private final long capacity;
+    private final Map<ReviewLocation, List<Review>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cached;
+
+    /**
+     * @param capacity the maximum number of reviews kept in memory, {@code 0} disables caching
+     */
+    ReviewStore(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * The reviews of an entry at one point: the location of its stored reviews and
+     * a copy of the reviews added since.
+     */
+    record Snapshot(ReviewLocation location, List<Review> added) {}
+
+    /**
+     * Takes a snapshot of the reviews of {@code entry} without reading any of them.
+     * Must be called under the stripe lock of the product.
+     */
+    Snapshot snapshot(ProductEntry entry) {
+        return new Snapshot(entry.getLocation(), List.copyOf(entry.getReviews()));
+    }
+
+    /**
+     * Returns every review of {@code snapshot}: the reviews at its location followed
+     * by the reviews added since. Needs no lock, so the stored reviews are paged in
+     * without blocking writers.
+     *
+     * @return a new list the caller may modify
+     * @throws java.nio.file.NoSuchFileException if a compaction deleted the file
+     * since the snapshot was taken, a new snapshot has the new location
+     */
+    List<Review> getReviews(Snapshot snapshot) throws IOException {
+        ReviewLocation location = snapshot.location();
+        List<Review> added = snapshot.added();
+        if (location == null) {
+            return new ArrayList<>(added);
+        }
+        List<Review> stored = page(location);
+        List<Review> reviews = new ArrayList<>(stored.size() + added.size());
+        reviews.addAll(stored);
+        reviews.addAll(added);
+        return reviews;
+    }
+
+    /**
+     * Returns a view of every review of {@code entry} as of this call, which reads
+     * the stored reviews again on each iteration and does not go through the cache.
+     * <br>
+     * Used to write a whole catalog without holding all of its reviews at once.
+     */
+    Collection<Review> streamReviews(ProductEntry entry) {
+        ReviewLocation location = entry.getLocation();
+        List<Review> added = List.copyOf(entry.getReviews());
+        if (location == null) {
+            return added;
+        }
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<Review> iterator() {
+                try {
+                    List<Review> reviews = read(location);
+                    reviews.addAll(added);
+                    return reviews.iterator();
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error paging in reviews from " + location.file(), e);
+                }
+            }
+
+            @Override
+            public int size() {
+                return location.count() + added.size();
+            }
+        };
+    }
+
+    private List<Review> page(ReviewLocation location) throws IOException {
+        synchronized (cache) {
+            List<Review> reviews = cache.get(location);
+            if (reviews != null) {
+                return reviews;
+            }
+        }
+        List<Review> reviews = PackedReviews.of(read(location));
+        if (reviews.size() <= capacity) {
+            synchronized (cache) {
+                if (cache.putIfAbsent(location, reviews) == null) {
+                    cached += reviews.size();
+                    Iterator<List<Review>> eldest = cache.values().iterator();
+                    while (cached > capacity) {
+                        cached -= eldest.next().size();
+                        eldest.remove();
+                    }
+                }
+            }
+        }
+        return reviews;
+    }
+
+    private static List<Review> read(ReviewLocation location) throws IOException {
+        return switch (location.format()) {
+            case SNAPSHOT -> SnapshotFile.readReviews(location);
+            case CSV -> readCsv(location);
+        };
+    }
+
+    private static List<Review> readCsv(ReviewLocation location) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(location.length());
+        try (FileChannel channel = FileChannel.open(location.file(), StandardOpenOption.READ)) {
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, location.offset() + bytes.position()) < 0) {
+                    throw new IOException("Review file changed since it was indexed " + location.file());
+                }
+            }
+        }
+        CharBuffer text = StandardCharsets.UTF_8.newDecoder().decode(bytes.flip());
+        List<Review> reviews = new ArrayList<>(location.count());
+        for (int start = 0, end; start < text.length(); start = end + 1) {
+            end = RecordParser.lineEnd(text, start);
+            try {
+                reviews.add(RecordParser.parseReview(text, start,
+                        (end > start && text.charAt(end - 1) == '\r') ? end - 1 : end));
+            } catch (ParseException | NumberFormatException e) {
+                logger.log(Level.FINE, "Skipping review " + text.subSequence(start, end) + " of " + location.file());
+            }
+        }
+        return reviews;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@code SecondaryIndexes} groups the catalog entries by {@link Rating}, by
+ * product type and by best before date of food, so a {@link ProductQuery}
+ * only scans the entries of its most selective criterion.
+ * <p>
+ * Every index is a concurrent set of entries, read without a lock. Writers
+ * add an entry when it joins the catalog and move it between rating buckets
+ * when its rating changes, under the same lock that publishes the new product
+ * version. A reader may therefore see an entry in a bucket its current rating
+ * has just left, or in two buckets at once, so candidates are collected into
+ * a set and always checked against the whole query.
+ * Drinks are best before the current day and are not in the date index.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class SecondaryIndexes {
+
+    private final List<Set<ProductEntry>> ratings = new ArrayList<>();
+    private final Set<ProductEntry> foods = ConcurrentHashMap.newKeySet();
+    private final Set<ProductEntry> drinks = ConcurrentHashMap.newKeySet();
+    private final NavigableMap<LocalDate, Set<ProductEntry>> bestBefore = new ConcurrentSkipListMap<>();
+
+    SecondaryIndexes() {
+        for (Rating rating : Rating.values()) {
+            ratings.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    void add(ProductEntry entry) {
+        Product product = entry.getProduct();
+        ratings.get(product.getRating().ordinal()).add(entry);
+        switch (product) {
+            case Food food -> {
+                foods.add(entry);
+                bestBefore.computeIfAbsent(food.getBestBefore(), date -> ConcurrentHashMap.newKeySet()).add(entry);
+            }
+            case Drink drink -> drinks.add(entry);
+        }
+    }
+
+    void rerate(ProductEntry entry, Rating previous, Rating next) {
+        if (previous != next) {
+            ratings.get(next.ordinal()).add(entry);
+            ratings.get(previous.ordinal()).remove(entry);
+        }
+    }
+
+    void clear() {
+        ratings.forEach(Set::clear);
+        foods.clear();
+        drinks.clear();
+        bestBefore.clear();
+    }
+
+    /**
+     * Returns the entries of the most selective index criterion of {@code query},
+     * a superset of the entries that match it.
+     *
+     * @param today the best before date of drinks
+     * @return the candidate entries, or {@code null} when no criterion narrows the catalog
+     */
+    Collection<ProductEntry> candidates(ProductQuery query, LocalDate today) {
+        List<Collection<ProductEntry>> candidates = null;
+        long best = Long.MAX_VALUE;
+
+        if (query.getMinRating() != Rating.NOT_RATED || query.getMaxRating() != Rating.FIVE_STAR) {
+            List<Collection<ProductEntry>> buckets = new ArrayList<>();
+            long size = 0;
+            for (int i = query.getMinRating().ordinal(); i <= query.getMaxRating().ordinal(); i++) {
+                buckets.add(ratings.get(i));
+                size += ratings.get(i).size();
+            }
+            candidates = buckets;
+            best = size;
+        }
+
+        Set<ProductEntry> type = (query.getType() == Food.class) ? foods :
+                (query.getType() == Drink.class) ? drinks : null;
+        if (type != null) {
+            if (type.size() < best) {
+                candidates = List.of(type);
+                best = type.size();
+            }
+        }
+
+        if (query.isBestBeforeBounded()) {
+            List<Collection<ProductEntry>> days = new ArrayList<>();
+            long size = 0;
+            for (Set<ProductEntry> day : range(query).values()) {
+                days.add(day);
+                size += day.size();
+                if (size >= best) {
+                    break;
+                }
+            }
+            if (query.isBestBefore(today)) {
+                days.add(drinks);
+                size += drinks.size();
+            }
+            if (size < best) {
+                candidates = days;
+            }
+        }
+
+        if (candidates == null) {
+            return null;
+        }
+        Set<ProductEntry> entries = new HashSet<>();
+        candidates.forEach(entries::addAll);
+        return entries;
+    }
+
+    private NavigableMap<LocalDate, Set<ProductEntry>> range(ProductQuery query) {
+        LocalDate from = query.getBestBeforeFrom();
+        LocalDate to = query.getBestBeforeTo();
+        if (from == null) {
+            return bestBefore.headMap(to, true);
+        } else if (to == null) {
+            return bestBefore.tailMap(from, true);
+        } else if (from.isAfter(to)) {
+            return new ConcurrentSkipListMap<>();
+        }
+        return bestBefore.subMap(from, true, to, true);
+    }
+}
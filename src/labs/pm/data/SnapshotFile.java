@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * {@code SnapshotFile} reads and writes the binary catalog snapshot.
+ * <p>
+ * A snapshot is a header ({@code magic, format version, product count}) followed
+ * by one length-prefixed record per product and a trailer holding the CRC32 of
+ * everything before it. A product record is
+ * {@code type, id, name, price scale, unscaled price, rating, [best before day],
+ * review count} followed by {@code rating, comments} for each review. Strings are
+ * length-prefixed UTF-8 and the unscaled price is a {@code long} unless it does
+ * not fit, in which case its two's-complement bytes are written instead.
+ * </p>
+ * <p>
+ * Snapshots are written through a {@link FileChannel} in large bulk writes to a
+ * {@code .part} file, forced to disk and atomically renamed, so a snapshot file
+ * is either complete or absent. They are restored from a memory-mapped view in
+ * one sequential pass.
+ * </p>
+ * <p>
+ * The product and review encodings and the checksummed {@link Output} are shared
+ * with the {@link CatalogSegments} layout.
+ * </p>
+ * @author AymanElMikh
+ **/
+final class SnapshotFile {
+
+    static final String EXTENSION = ".snapshot";
+
+    private static final int MAGIC = 0x504D534E;
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    static final int TRAILER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte DRINK = 'D';
+    private static final byte FOOD = 'F';
+    private static final byte COMPACT_PRICE = 0;
+    private static final byte WIDE_PRICE = 1;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes {@code products} to a new snapshot file named {@code name} in {@code folder}.
+     * The snapshot is moved into place atomically, replacing any file of that name.
+     *
+     * @return the path of the completed snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    static Path write(Path folder, String name, Map<Product, ? extends Collection<Review>> products) throws IOException {
+        return write(folder, name, products, (product, location) -> {});
+    }
+
+    /**
+     * Writes {@code products} to a new snapshot file named {@code name} in {@code folder},
+     * reporting where the reviews of each product are stored in it. The snapshot is
+     * moved into place atomically, replacing any file of that name.
+     * <br>
+     * The review collections are iterated once each, in turn, so they may page
+     * their reviews in from disk without holding the whole catalog in memory.
+     *
+     * @param written receives each product with the location of its reviews in the completed snapshot
+     * @return the path of the completed snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    static Path write(Path folder, String name, Map<Product, ? extends Collection<Review>> products,
+                      BiConsumer<Product, ReviewLocation> written) throws IOException {
+        Path part = folder.resolve(name + ".part");
+        Path file = folder.resolve(name);
+        try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel);
+            out.ensure(HEADER_SIZE);
+            out.buffer.putInt(MAGIC).putShort(FORMAT_VERSION).putInt(products.size());
+            List<ReviewLocation> locations = new ArrayList<>(products.size());
+            for (Map.Entry<Product, ? extends Collection<Review>> entry : products.entrySet()) {
+                locations.add(writeProduct(out, file, entry.getKey(), entry.getValue()));
+            }
+            out.finish(MAGIC);
+            channel.force(true);
+            Files.move(part, file, StandardCopyOption.ATOMIC_MOVE);
+            Iterator<ReviewLocation> location = locations.iterator();
+            products.keySet().forEach(product -> written.accept(product, location.next()));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Restores the products and reviews held in a snapshot file.
+     *
+     * @throws IOException if the file is not a complete snapshot of a known format version
+     */
+    static Map<Product, List<Review>> read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = open(channel, file, MAGIC, FORMAT_VERSION);
+            int count = in.next(Integer.BYTES).getInt();
+            Map<Product, List<Review>> products = new HashMap<>(Math.max(16, (int) (count / 0.75f) + 1));
+            for (int i = 0; i < count; i++) {
+                ByteBuffer record = in.next(in.next(Integer.BYTES).getInt());
+                Product product = readProduct(record);
+                products.put(product, readReviews(record, record.getInt()));
+            }
+            return products;
+        }
+    }
+
+    /**
+     * Restores the products of a snapshot file without their reviews. Each entry
+     * gets the summary of its reviews, computed from their ratings alone, and the
+     * location of its reviews in {@code file} so they can be paged in on demand.
+     *
+     * @throws IOException if the file is not a complete snapshot of a known format version
+     */
+    static List<ProductEntry> readEntries(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Input in = open(channel, file, MAGIC, FORMAT_VERSION);
+            int count = in.next(Integer.BYTES).getInt();
+            List<ProductEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int length = in.next(Integer.BYTES).getInt();
+                long start = in.position();
+                ByteBuffer record = in.next(length);
+                Product product = readProduct(record);
+                int reviews = record.getInt();
+                int offset = record.position();
+                int[] histogram = new int[Rating.values().length];
+                for (int j = 0; j < reviews; j++) {
+                    histogram[record.get()]++;
+                    record.position(record.getInt() + record.position());
+                }
+                entries.add(new ProductEntry(product, RatingSummary.of(histogram),
+                        new ReviewLocation(file, ReviewLocation.Format.SNAPSHOT, start + offset, length - offset, reviews)));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Reads the reviews at a {@link ReviewLocation.Format#SNAPSHOT SNAPSHOT} location.
+     * <br>
+     * Snapshot files are never modified once renamed into place, so the location
+     * is not checked against the trailer again.
+     */
+    static List<Review> readReviews(ReviewLocation location) throws IOException {
+        try (FileChannel channel = FileChannel.open(location.file(), StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocate(location.length());
+            while (in.hasRemaining()) {
+                if (channel.read(in, location.offset() + in.position()) < 0) {
+                    throw new IOException("Truncated snapshot " + location.file());
+                }
+            }
+            return readReviews(in.flip(), location.count());
+        }
+    }
+
+    /**
+     * Opens a file written through {@link Output} after checking its trailer and
+     * header, positioned after the header. The trailer is left out of the input.
+     *
+     * @throws IOException if the file is truncated, corrupt, or not of the expected kind and version
+     */
+    static Input open(FileChannel channel, Path file, int magic, short formatVersion) throws IOException {
+        long size = channel.size();
+        if (size < Integer.BYTES + Short.BYTES + TRAILER_SIZE) {
+            throw new IOException("Truncated file " + file);
+        }
+        Input in = new Input(channel, file, size - TRAILER_SIZE);
+        CRC32 crc = new CRC32();
+        for (long position = 0; position < in.length(); position += Input.MAX_WINDOW) {
+            crc.update(in.at(position, (int) Math.min(in.length() - position, Input.MAX_WINDOW)));
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        while (trailer.hasRemaining()) {
+            if (channel.read(trailer, in.length() + trailer.position()) < 0) {
+                throw new IOException("Truncated file " + file);
+            }
+        }
+        if (trailer.getInt(Integer.BYTES) != magic || trailer.getInt(0) != (int) crc.getValue()) {
+            throw new IOException("Corrupt file " + file);
+        }
+        ByteBuffer header = in.next(Integer.BYTES + Short.BYTES);
+        if (header.getInt() != magic) {
+            throw new IOException("Unexpected file " + file);
+        }
+        short version = header.getShort();
+        if (version != formatVersion) {
+            throw new IOException("Unsupported format version " + version + " in " + file);
+        }
+        return in;
+    }
+
+    private static ReviewLocation writeProduct(Output out, Path file, Product product, Collection<Review> collection)
+            throws IOException {
+        List<Review> reviews = (collection instanceof List<Review> list) ? list : List.copyOf(collection);
+        byte[][] comments = new byte[reviews.size()][];
+        int length = productLength(product) + Integer.BYTES;
+        for (int i = 0; i < comments.length; i++) {
+            comments[i] = reviews.get(i).comments().getBytes(StandardCharsets.UTF_8);
+            length += Byte.BYTES + Integer.BYTES + comments[i].length;
+        }
+
+        out.ensure(Integer.BYTES);
+        out.buffer.putInt(length);
+        putProduct(out, product);
+        out.ensure(Integer.BYTES);
+        out.buffer.putInt(comments.length);
+        long offset = out.position();
+        for (int i = 0; i < comments.length; i++) {
+            out.ensure(Byte.BYTES);
+            out.buffer.put((byte) reviews.get(i).rating().ordinal());
+            out.putBytes(comments[i]);
+        }
+        return new ReviewLocation(file, ReviewLocation.Format.SNAPSHOT, offset,
+                (int) (out.position() - offset), comments.length);
+    }
+
+    /**
+     * Returns the number of bytes {@link #putProduct} writes for {@code product}.
+     */
+    static int productLength(Product product) {
+        return Byte.BYTES + Integer.BYTES + Integer.BYTES + product.getName().getBytes(StandardCharsets.UTF_8).length
+                + Integer.BYTES + Byte.BYTES + Long.BYTES
+                + Byte.BYTES + ((product instanceof Food) ? Long.BYTES : 0);
+    }
+
+    /**
+     * Writes the fields of {@code product}, as read back by {@link #readProduct}.
+     */
+    static void putProduct(Output out, Product product) throws IOException {
+        out.ensure(Byte.BYTES + Integer.BYTES);
+        out.buffer.put((product instanceof Food) ? FOOD : DRINK).putInt(product.getId());
+        out.putBytes(product.getName().getBytes(StandardCharsets.UTF_8));
+        out.ensure(Integer.BYTES + Byte.BYTES + Long.BYTES);
+        out.buffer.putInt(product.getPriceScale()).put(COMPACT_PRICE).putLong(product.getPriceUnits());
+        out.ensure(Byte.BYTES + Long.BYTES);
+        out.buffer.put((byte) product.getRating().ordinal());
+        if (product instanceof Food) {
+            out.buffer.putLong(product.getBestBefore().toEpochDay());
+        }
+    }
+
+    /**
+     * Writes the fields of {@code product} to a buffer with {@link #productLength}
+     * bytes remaining, as read back by {@link #readProduct}.
+     */
+    static void putProduct(ByteBuffer out, Product product) {
+        byte[] name = product.getName().getBytes(StandardCharsets.UTF_8);
+        out.put((product instanceof Food) ? FOOD : DRINK).putInt(product.getId());
+        out.putInt(name.length).put(name);
+        out.putInt(product.getPriceScale()).put(COMPACT_PRICE).putLong(product.getPriceUnits());
+        out.put((byte) product.getRating().ordinal());
+        if (product instanceof Food) {
+            out.putLong(product.getBestBefore().toEpochDay());
+        }
+    }
+
+    /**
+     * Writes one review, as read back by {@link #readReviews(ByteBuffer, int)}.
+     */
+    static void putReview(Output out, Review review) throws IOException {
+        out.ensure(Byte.BYTES);
+        out.buffer.put((byte) review.rating().ordinal());
+        out.putBytes(review.comments().getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Product readProduct(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        int id = in.getInt();
+        String name = getString(in);
+        int scale = in.getInt();
+        long units = (in.get() == COMPACT_PRICE) ?
+                in.getLong() : wideUnits(new BigInteger(getBytes(in)), id);
+        Rating rating = Rateable.convert(in.get());
+        return switch (type) {
+            case DRINK -> new Drink(id, name, units, scale, rating);
+            case FOOD -> new Food(id, name, units, scale, rating, LocalDate.ofEpochDay(in.getLong()));
+            default -> throw new IOException("Unknown product type " + type + " for product " + id);
+        };
+    }
+
+    /*
+     * Prices are held as a long and written compact, only a snapshot written
+     * before that may hold a wide one, which must still fit in a long.
+     */
+    private static long wideUnits(BigInteger unscaled, int id) throws IOException {
+        if (unscaled.bitLength() >= Long.SIZE) {
+            throw new IOException("Price out of range for product " + id);
+        }
+        return unscaled.longValue();
+    }
+
+    static List<Review> readReviews(ByteBuffer in, int count) {
+        List<Review> reviews = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            reviews.add(new Review(Rateable.convert(in.get()), getString(in)));
+        }
+        return reviews;
+    }
+
+    private static byte[] getBytes(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer in) {
+        return new String(getBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Reads a file through mapped windows of at most {@code Integer.MAX_VALUE} bytes,
+     * so files of any size can be read. A read that runs past the current window
+     * maps a new one starting at the read, so a read never spans two windows.
+     */
+    static final class Input {
+
+        static final int MAX_WINDOW = Integer.MAX_VALUE;
+
+        private final FileChannel channel;
+        private final Path file;
+        private final long length;
+        private MappedByteBuffer window;
+        private long base;
+        private long position;
+
+        Input(FileChannel channel, Path file, long length) {
+            this.channel = channel;
+            this.file = file;
+            this.length = length;
+        }
+
+        long length() {
+            return length;
+        }
+
+        long position() {
+            return position;
+        }
+
+        long remaining() {
+            return length - position;
+        }
+
+        /*
+         * Returns the next {@code bytes} bytes as a buffer of their own and moves past them.
+         */
+        ByteBuffer next(int bytes) throws IOException {
+            ByteBuffer slice = at(position, bytes);
+            position += bytes;
+            return slice;
+        }
+
+        /*
+         * Returns the {@code bytes} bytes at {@code position} as a buffer of their own.
+         */
+        ByteBuffer at(long position, int bytes) throws IOException {
+            if (position < 0 || bytes < 0 || position + bytes > length) {
+                throw new IOException("Truncated file " + file);
+            }
+            if (window == null || position < base || position + bytes > base + window.capacity()) {
+                window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(length - position, MAX_WINDOW));
+                base = position;
+            }
+            return window.slice((int) (position - base), bytes);
+        }
+    }
+
+    /*
+     * Buffers writes in one direct buffer and drains it to the channel when full,
+     * folding every drained byte into the running checksum.
+     */
+    static final class Output {
+
+        private final FileChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+        private long drained;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return drained + buffer.position();
+        }
+
+        /*
+         * Writes the trailer, the checksum of everything written so far and {@code magic}.
+         */
+        int finish(int magic) throws IOException {
+            flush();
+            int checksum = (int) crc.getValue();
+            buffer.putInt(checksum).putInt(magic);
+            buffer.flip();
+            drain();
+            return checksum;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            drain();
+        }
+
+        private void drain() throws IOException {
+            while (buffer.hasRemaining()) {
+                drained += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code StripedHistogram} counts durations in nanoseconds in log-linear buckets
+ * that many threads update at once.
+ * <br>
+ * Each power of two is split into {@value #SUB_BUCKETS} buckets, so percentiles
+ * are within about 12% of the recorded values. Every thread records into the
+ * stripe picked by its id, and {@link #snapshot()} adds the stripes up, so
+ * recording takes two atomic increments, no lock and no allocation. The
+ * largest duration is kept exactly, it only costs a compare and set when a
+ * stripe sees a new maximum.
+ * @author AymanElMikh
+ **/
+final class StripedHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final int SUM = BUCKETS;
+    private static final int MAX = BUCKETS + 1;
+    private static final int STRIPES =
+            Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2);
+
+    /**
+     * The merged counts of a histogram at one point in time.
+     */
+    record Snapshot(long count, long sum, long max, long[] buckets) {
+
+        double mean() {
+            return (count == 0) ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns the duration under which a {@code quantile} of the recorded durations fall.
+         *
+         * @return the upper bound of the bucket holding that duration, at most {@link #max()},
+         *         or 0 when nothing was recorded
+         */
+        long valueAt(double quantile) {
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return 0;
+        }
+    }
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    StripedHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 2);
+        }
+    }
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().threadId() & (STRIPES - 1)];
+        stripe.getAndIncrement(index(value));
+        stripe.getAndAdd(SUM, value);
+        if (value > stripe.get(MAX)) {
+            stripe.accumulateAndGet(MAX, value, Math::max);
+        }
+    }
+
+    Snapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long n = stripe.get(i);
+                buckets[i] += n;
+                count += n;
+            }
+            sum += stripe.get(SUM);
+            max = Math.max(max, stripe.get(MAX));
+        }
+        return new Snapshot(count, sum, max, buckets);
+    }
+
+    /*
+     * Values below SUB_BUCKETS have a bucket each. Above that, the bits under the
+     * top SUB_BUCKET_BITS + 1 bits of a value are dropped.
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - SUB_BUCKET_BITS - Long.numberOfLeadingZeros(value);
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package labs.pm.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@code TimedLock} is a {@link ReentrantLock} that records how long threads wait
+ * for it and how long they hold it.
+ * <br>
+ * Only the outermost acquisition of a thread is timed. The acquisition time is
+ * a plain field, as only the thread holding the lock reads or writes it.
+ * @author AymanElMikh
+ **/
+final class TimedLock implements Lock {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ProductManagerMetrics.Timer wait;
+    private final ProductManagerMetrics.Timer hold;
+    private long acquired;
+
+    TimedLock(ProductManagerMetrics.Timer wait, ProductManagerMetrics.Timer hold) {
+        this.wait = wait;
+        this.hold = hold;
+    }
+
+    @Override
+    public void lock() {
+        long start = System.nanoTime();
+        lock.lock();
+        acquired(start);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        long start = System.nanoTime();
+        lock.lockInterruptibly();
+        acquired(start);
+    }
+
+    @Override
+    public boolean tryLock() {
+        long start = System.nanoTime();
+        if (lock.tryLock()) {
+            acquired(start);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        if (lock.tryLock(time, unit)) {
+            acquired(start);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void unlock() {
+        if (lock.getHoldCount() == 1) {
+            hold.recordNanos(System.nanoTime() - acquired);
+        }
+        lock.unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+        return lock.newCondition();
+    }
+
+    private void acquired(long start) {
+        if (lock.getHoldCount() == 1) {
+            acquired = System.nanoTime();
+            wait.recordNanos(acquired - start);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that compaction folds the review journal into a checkpoint a restart
+ * can load, with the journal segments it does not cover.
+ * <br>
+ * The {@link ProductManager} is a singleton, so it is pointed at a temporary
+ * catalog through the {@code labs.pm.*} system properties before it is loaded,
+ * and no other test may load it in the same JVM.
+ * @author AymanElMikh
+ **/
+class JournalCompactionTest {
+
+    private static final NumberedFiles CHECKPOINTS = new NumberedFiles("catalog{0}.snapshot");
+    private static final NumberedFiles SEGMENTS = new NumberedFiles("journal{0}.log");
+
+    @TempDir
+    static Path folder;
+
+    private static Path data;
+    private static ProductManager pm;
+
+    @BeforeAll
+    static void loadCatalog() throws IOException {
+        data = Files.createDirectories(folder.resolve("data"));
+        Files.writeString(data.resolve("product1.csv"), "D,1,Tea,1.99,0");
+        Files.writeString(data.resolve("review1.csv"), "4,Nice\n5,Excellent\n");
+        Files.writeString(data.resolve("product2.csv"), "F,2,Cake,3.50,0,2030-01-01");
+        Map.of("data.folder", data,
+                "reports.folder", Files.createDirectories(folder.resolve("reports")),
+                "temp.folder", Files.createDirectories(folder.resolve("temp"))
+        ).forEach((key, path) -> System.setProperty("labs.pm." + key, path.toString()));
+        Map.of("data.layout", "files",
+                "journal.enabled", "true",
+                "journal.commit.window.ms", "1",
+                "journal.compaction.interval.s", "0",
+                "reports.store.enabled", "false",
+                "metrics.enabled", "false"
+        ).forEach((key, value) -> System.setProperty("labs.pm." + key, value));
+        pm = ProductManager.getInstance();
+    }
+
+    @Test
+    void compactionFoldsTheJournalIntoACheckpoint() throws IOException {
+        pm.reviewProduct(1, Rating.THREE_STAR, "Journaled");
+        pm.compactJournal();
+
+        Path checkpoint = newestCheckpoint();
+        long covered = CHECKPOINTS.numberOf(checkpoint);
+        assertEquals(List.of("Nice", "Excellent", "Journaled"), comments(SnapshotFile.read(checkpoint), 1));
+        assertEquals(1, CHECKPOINTS.list(data).size());
+        assertTrue(SEGMENTS.list(data).stream().allMatch(segment -> SEGMENTS.numberOf(segment) >= covered));
+
+        pm.reviewProduct(2, Rating.TWO_STAR, "After");
+        assertEquals(List.of("After"), journaled(covered));
+    }
+
+    @Test
+    void unchangedCatalogIsNotCompactedAgain() throws IOException {
+        pm.reviewProduct(2, Rating.FIVE_STAR, "Compacted");
+        pm.compactJournal();
+        Path checkpoint = newestCheckpoint();
+        pm.compactJournal();
+
+        assertEquals(checkpoint, newestCheckpoint());
+    }
+
+    @Test
+    void failedCheckpointIsRetriedAtTheNextCompaction() throws IOException {
+        pm.reviewProduct(2, Rating.FOUR_STAR, "Retried");
+        long next = SEGMENTS.numberOf(SEGMENTS.list(data).get(SEGMENTS.list(data).size() - 1)) + 1;
+        Path part = data.resolve(CHECKPOINTS.name(next) + ".part");
+        Files.createDirectory(part);
+        pm.compactJournal();
+        Files.deleteIfExists(part);
+        assertFalse(Files.exists(data.resolve(CHECKPOINTS.name(next))));
+
+        pm.compactJournal();
+
+        Path checkpoint = newestCheckpoint();
+        assertNotEquals(next, CHECKPOINTS.numberOf(checkpoint));
+        assertTrue(comments(SnapshotFile.read(checkpoint), 2).contains("Retried"));
+    }
+
+    private static Path newestCheckpoint() throws IOException {
+        List<Path> checkpoints = CHECKPOINTS.list(data);
+        return checkpoints.get(checkpoints.size() - 1);
+    }
+
+    private static List<String> comments(Map<Product, List<Review>> catalog, int id) {
+        List<String> comments = new ArrayList<>();
+        catalog.forEach((product, reviews) -> {
+            if (product.getId() == id) {
+                reviews.forEach(review -> comments.add(review.comments()));
+            }
+        });
+        return comments;
+    }
+
+    private static List<String> journaled(long firstSegment) throws IOException {
+        List<String> comments = new ArrayList<>();
+        for (Path segment : SEGMENTS.list(data)) {
+            if (SEGMENTS.numberOf(segment) >= firstSegment) {
+                ReviewJournal.replay(segment, product -> {}, (review, id) -> comments.add(review.comments()));
+            }
+        }
+        return comments;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests how {@link RecordParser} reads the fields of product and review records,
+ * including quoted text and the last field that runs to the end of the record.
+ * @author AymanElMikh
+ **/
+class RecordParserTest {
+
+    @Test
+    void parsesADrink() throws ParseException {
+        Product product = product("D,101,Tea,1.99,4");
+
+        assertInstanceOf(Drink.class, product);
+        assertEquals(101, product.getId());
+        assertEquals("Tea", product.getName());
+        assertEquals(new BigDecimal("1.99"), product.getPrice());
+        assertEquals(Rating.FOUR_STAR, product.getRating());
+    }
+
+    @Test
+    void parsesAFood() throws ParseException {
+        Product product = product("F,2,Cake,3.50,0,2030-01-31");
+
+        assertInstanceOf(Food.class, product);
+        assertEquals(new BigDecimal("3.50"), product.getPrice());
+        assertEquals(LocalDate.of(2030, 1, 31), product.getBestBefore());
+    }
+
+    @Test
+    void ignoresAnUnknownProductType() throws ParseException {
+        assertNull(product("X,1,Tea,1.99,0"));
+        assertNull(product("DD,1,Tea,1.99,0"));
+    }
+
+    @Test
+    void unquotesANameWithCommasAndQuotes() throws ParseException {
+        assertEquals("Tea, \"green\"", product("D,1,\"Tea, \"\"green\"\"\",1.99,0").getName());
+    }
+
+    @Test
+    void trimsWhitespaceAroundThePrice() throws ParseException {
+        assertEquals(new BigDecimal("1.99"), product("D,1,Tea, 1.99 ,0").getPrice());
+    }
+
+    @Test
+    void parsesAPriceWithAnExponent() throws ParseException {
+        assertEquals(0, new BigDecimal("150").compareTo(product("D,1,Tea,1.5E2,0").getPrice()));
+    }
+
+    @Test
+    void readsTheCommentsToTheEndOfTheRecord() throws ParseException {
+        assertEquals("Nice, really nice", review("4,Nice, really nice").comments());
+        assertEquals("", review("4,").comments());
+    }
+
+    @Test
+    void unquotesFullyQuotedComments() throws ParseException {
+        assertEquals("Rather \"good\", I said", review("4,\"Rather \"\"good\"\", I said\"").comments());
+    }
+
+    @Test
+    void keepsCommentsVerbatimUnlessTheClosingQuoteEndsTheRecord() throws ParseException {
+        assertEquals("\"Great\" tea", review("5,\"Great\" tea").comments());
+        assertEquals("\"a\",junk", review("5,\"a\",junk").comments());
+        assertEquals("\"unterminated", review("5,\"unterminated").comments());
+    }
+
+    @Test
+    void parsesARecordInsideALine() throws ParseException {
+        String text = "4,Nice\n5,Great\n";
+        int start = RecordParser.lineEnd(text, 0) + 1;
+
+        assertEquals("Great", RecordParser.parseReview(text, start, RecordParser.lineEnd(text, start)).comments());
+    }
+
+    @Test
+    void rejectsMissingFields() {
+        assertThrows(ParseException.class, () -> review("4"));
+        assertThrows(ParseException.class, () -> product("D,1,Tea"));
+        assertThrows(ParseException.class, () -> product("F,1,Tea,1.99,0"));
+    }
+
+    @Test
+    void rejectsMalformedNumbers() {
+        assertThrows(ParseException.class, () -> review("x,Nice"));
+        assertThrows(ParseException.class, () -> product("D,,Tea,1.99,0"));
+        assertThrows(ParseException.class, () -> product("D,99999999999,Tea,1.99,0"));
+        assertThrows(NumberFormatException.class, () -> product("D,1,Tea,cheap,0"));
+    }
+
+    @Test
+    void rejectsAnUnterminatedQuotedName() {
+        assertThrows(ParseException.class, () -> product("D,1,\"Tea,1.99,0"));
+        assertThrows(ParseException.class, () -> product("D,1,\"Tea\"x,1.99,0"));
+    }
+
+    @Test
+    void rejectsAnInvalidDate() {
+        assertThrows(DateTimeException.class, () -> product("F,1,Cake,3.50,0,2030-02-30"));
+        assertThrows(DateTimeException.class, () -> product("F,1,Cake,3.50,0,tomorrow"));
+    }
+
+    private static Product product(String record) throws ParseException {
+        return RecordParser.parseProduct(record, 0, record.length());
+    }
+
+    private static Review review(String record) throws ParseException {
+        return RecordParser.parseReview(record, 0, record.length());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the recovery paths of {@link ReviewJournal}: replay of torn and corrupt
+ * tails, groups that fail part way, and rotation.
+ * @author AymanElMikh
+ **/
+class ReviewJournalTest {
+
+    private static final NumberedFiles SEGMENTS = new NumberedFiles("journal{0}.log");
+    private static final long COMMIT_WINDOW_MILLIS = 200;
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void replaysReviewsAndProductsInAppendOrder() throws IOException {
+        ReviewJournal journal = new ReviewJournal(folder, SEGMENTS, 0, 1);
+        journal.append(new Drink(7, "Tea", BigDecimal.valueOf(1.99), Rating.NOT_RATED)).join();
+        journal.append(7, List.of(review("first"), review("second"))).join();
+        journal.append(8, review("third")).join();
+
+        List<String> records = new ArrayList<>();
+        int count = ReviewJournal.replay(segment(0),
+                product -> records.add("product " + product.getId() + " " + product.getName()),
+                (review, id) -> records.add(id + " " + review.comments()));
+
+        assertEquals(4, count);
+        assertEquals(List.of("product 7 Tea", "7 first", "7 second", "8 third"), records);
+    }
+
+    @Test
+    void replayStopsAtATornRecord() throws IOException {
+        ReviewJournal journal = new ReviewJournal(folder, SEGMENTS, 0, 1);
+        journal.append(1, review("kept")).join();
+        journal.append(1, review("torn")).join();
+        Path file = segment(0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        assertEquals(List.of("kept"), comments(file));
+    }
+
+    @Test
+    void replayStopsAtACorruptRecord() throws IOException {
+        ReviewJournal journal = new ReviewJournal(folder, SEGMENTS, 0, 1);
+        journal.append(1, review("kept")).join();
+        journal.append(1, review("corrupt")).join();
+        journal.append(1, review("after")).join();
+        Path file = segment(0);
+        byte[] bytes = Files.readAllBytes(file);
+        int at = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("corrupt");
+        bytes[at] ^= 1;
+        Files.write(file, bytes);
+
+        assertEquals(List.of("kept"), comments(file));
+    }
+
+    @Test
+    void failedGroupIsCutBackBeforeTheNextGroup() throws IOException {
+        ReviewJournal journal = new ReviewJournal(folder, SEGMENTS, 0, COMMIT_WINDOW_MILLIS);
+        journal.append(1, review("before")).join();
+        CompletableFuture<Void> large = journal.append(1, review("x".repeat(1 << 17)));
+        CompletableFuture<Void> failing = journal.append(1, new Review(Rating.ONE_STAR, null));
+
+        assertThrows(CompletionException.class, failing::join);
+        assertThrows(CompletionException.class, large::join);
+        journal.append(1, review("after")).join();
+
+        assertEquals(List.of("before", "after"), comments(segment(0)));
+    }
+
+    @Test
+    void recordsForcedBeforeARotationSurviveALaterFailure() throws IOException {
+        ReviewJournal journal = new ReviewJournal(folder, SEGMENTS, 0, COMMIT_WINDOW_MILLIS);
+        CompletableFuture<Void> forced = journal.append(1, review("forced"));
+        CompletableFuture<Long> rotation = journal.rotate();
+        CompletableFuture<Void> failing = journal.append(1, new Review(Rating.ONE_STAR, null));
+
+        assertThrows(CompletionException.class, failing::join);
+        forced.join();
+        assertEquals(1, rotation.join());
+        journal.append(1, review("after")).join();
+
+        assertEquals(List.of("forced"), comments(segment(0)));
+        assertEquals(List.of("after"), comments(segment(1)));
+    }
+
+    @Test
+    void newJournalStartsAfterExistingSegments() throws IOException {
+        new ReviewJournal(folder, SEGMENTS, 0, 1).rotate().join();
+        new ReviewJournal(folder, SEGMENTS, 0, 1).append(1, review("restarted")).join();
+
+        assertEquals(List.of("restarted"), comments(segment(2)));
+    }
+
+    @Test
+    void deleteBeforeRemovesOlderSegmentsOnly() throws IOException {
+        ReviewJournal journal = new ReviewJournal(folder, SEGMENTS, 0, 1);
+        journal.rotate().join();
+        long segment = journal.rotate().join();
+        journal.deleteBefore(segment);
+
+        assertFalse(Files.exists(segment(0)));
+        assertFalse(Files.exists(segment(1)));
+        assertTrue(Files.exists(segment(2)));
+    }
+
+    private Path segment(long number) {
+        return folder.resolve(SEGMENTS.name(number));
+    }
+
+    private static Review review(String comments) {
+        return new Review(Rating.FOUR_STAR, comments);
+    }
+
+    private static List<String> comments(Path file) throws IOException {
+        List<String> comments = new ArrayList<>();
+        ReviewJournal.replay(file, product -> {}, (review, id) -> comments.add(review.comments()));
+        return comments;
+    }
+}
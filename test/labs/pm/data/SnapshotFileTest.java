@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2025.
+ *
+ * This program is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public
+ * License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package labs.pm.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests that a snapshot file reads back what was written, and that its CRC
+ * rejects a damaged or foreign file instead of restoring part of a catalog.
+ * @author AymanElMikh
+ **/
+class SnapshotFileTest {
+
+    @TempDir
+    Path folder;
+
+    @Test
+    void readsBackProductsAndReviews() throws IOException {
+        Path file = SnapshotFile.write(folder, "catalog.snapshot", catalog());
+
+        Map<Product, List<Review>> restored = SnapshotFile.read(file);
+
+        assertEquals(catalog(), restored);
+        Product cake = restored.keySet().stream().filter(product -> product.getId() == 2).findFirst().orElseThrow();
+        assertEquals("Cake, \"iced\"", cake.getName());
+        assertEquals(new BigDecimal("3.50"), cake.getPrice());
+        assertEquals(LocalDate.of(2030, 1, 1), cake.getBestBefore());
+        assertFalse(Files.exists(folder.resolve("catalog.snapshot.part")));
+    }
+
+    @Test
+    void rejectsAFlippedByte() throws IOException {
+        Path file = SnapshotFile.write(folder, "catalog.snapshot", catalog());
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 0x01;
+        Files.write(file, bytes);
+
+        IOException e = assertThrows(IOException.class, () -> SnapshotFile.read(file));
+        assertTrue(e.getMessage().startsWith("Corrupt file"), e.getMessage());
+    }
+
+    @Test
+    void rejectsATruncatedFile() throws IOException {
+        Path file = SnapshotFile.write(folder, "catalog.snapshot", catalog());
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> SnapshotFile.read(file));
+        Files.write(file, Arrays.copyOf(bytes, 4));
+        IOException e = assertThrows(IOException.class, () -> SnapshotFile.read(file));
+        assertTrue(e.getMessage().startsWith("Truncated file"), e.getMessage());
+    }
+
+    @Test
+    void rejectsAnotherKindOfFile() throws IOException {
+        Path file = SnapshotFile.write(folder, "catalog.snapshot", catalog());
+        try (FileChannel channel = FileChannel.open(file)) {
+            IOException e = assertThrows(IOException.class,
+                    () -> SnapshotFile.open(channel, file, 0x4A524E4C, (short) 1));
+            assertTrue(e.getMessage().startsWith("Corrupt file"), e.getMessage());
+        }
+    }
+
+    @Test
+    void rejectsAnUnknownFormatVersion() throws IOException {
+        Path file = SnapshotFile.write(folder, "catalog.snapshot", catalog());
+        int magic = ByteBuffer.wrap(Files.readAllBytes(file)).getInt();
+        try (FileChannel channel = FileChannel.open(file)) {
+            IOException e = assertThrows(IOException.class, () -> SnapshotFile.open(channel, file, magic, (short) 2));
+            assertTrue(e.getMessage().startsWith("Unsupported format version 1"), e.getMessage());
+        }
+    }
+
+    @Test
+    void writesAnEmptyCatalog() throws IOException {
+        Path file = SnapshotFile.write(folder, "empty.snapshot", Map.of());
+
+        assertTrue(SnapshotFile.read(file).isEmpty());
+    }
+
+    private static Map<Product, List<Review>> catalog() {
+        Map<Product, List<Review>> catalog = new LinkedHashMap<>();
+        catalog.put(new Drink(1, "Tea", new BigDecimal("1.99"), Rating.FOUR_STAR),
+                List.of(new Review(Rating.FOUR_STAR, "Nice"), new Review(Rating.FIVE_STAR, "Great, really")));
+        catalog.put(new Food(2, "Cake, \"iced\"", new BigDecimal("3.50"), Rating.NOT_RATED, LocalDate.of(2030, 1, 1)),
+                List.of());
+        return catalog;
+    }
+}